@@ -2,6 +2,7 @@ package name.kugelman.john.kdoom.file;
 
 import java.io.*;
 import java.nio.*;
+import java.util.zip.*;
 
 public class Lump {
     private WadFile wadFile;
@@ -53,6 +54,16 @@ public class Lump {
         return buffer;
     }
 
+    // CRC-32 of the data, to tell whether derived data is stale.
+    public int getChecksum() throws IOException {
+        ByteBuffer data  = getData();
+        CRC32      crc32 = new CRC32();
+
+        crc32.update(data.array(), data.arrayOffset(), data.limit());
+
+        return (int) crc32.getValue();
+    }
+
 
     @Override
     public String toString() {
@@ -7,6 +7,9 @@ import java.util.*;
 public abstract class Wad {
     public abstract SortedMap<String, Lump> lumpsByName();
 
+    // The files making up the WAD, in load order.
+    public abstract List<WadFile> wadFiles();
+
 
     public Lump lump(String name) throws IOException {
         Lump lump = lumpsByName().get(name);
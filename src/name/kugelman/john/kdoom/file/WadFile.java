@@ -101,6 +101,11 @@ public class WadFile extends Wad {
         return Collections.unmodifiableSortedMap(lumpsByName);
     }
 
+    @Override
+    public List<WadFile> wadFiles() {
+        return Collections.singletonList(this);
+    }
+
 
     @Override
     public String toString() {
@@ -39,6 +39,11 @@ public class WadFileSet extends Wad {
         return Collections.unmodifiableSortedMap(lumpsByName);
     }
 
+    @Override
+    public List<WadFile> wadFiles() {
+        return Collections.unmodifiableList(wadFiles);
+    }
+
 
     @Override
     public String toString() {
@@ -0,0 +1,41 @@
+package name.kugelman.john.kdoom.gui;
+
+import java.awt.*;
+
+// A selected or tagged line, sector or thing and the screen rectangle outside
+// which its highlight changes nothing, from LevelRenderer.getHighlights.
+// Highlights of the same object highlighted the same way are equal, whatever
+// their rectangles, so callers can tell what a selection changed.
+public class Highlight {
+    private Object    object;
+    private boolean   isSelected;
+    private Rectangle area;
+
+    Highlight(Object object, boolean isSelected, Rectangle area) {
+        this.object     = object;
+        this.isSelected = isSelected;
+        this.area       = area;
+    }
+
+
+    public Rectangle getArea() {
+        return new Rectangle(area);
+    }
+
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof Highlight)) {
+            return false;
+        }
+
+        Highlight that = (Highlight) object;
+
+        return this.object == that.object && this.isSelected == that.isSelected;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(object) * 2 + (isSelected ? 1 : 0);
+    }
+}
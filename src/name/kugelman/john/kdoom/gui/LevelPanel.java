@@ -7,6 +7,7 @@ import java.awt.image.*;
 import java.io.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
 import javax.swing.*;
 
 import name.kugelman.john.util.*;
@@ -31,59 +32,29 @@ public class LevelPanel extends JPanel {
     }
 
 
-    private static int LEVEL_LEFT   = Short.MIN_VALUE;
-    private static int LEVEL_RIGHT  = Short.MAX_VALUE;
-    private static int LEVEL_BOTTOM = Short.MIN_VALUE;
-    private static int LEVEL_TOP    = Short.MAX_VALUE;
-    private static int LEVEL_WIDTH  = LEVEL_RIGHT - LEVEL_LEFT   + 1;
-    private static int LEVEL_HEIGHT = LEVEL_TOP   - LEVEL_BOTTOM + 1;
-
     private static final int[] GRID_SPACINGS = new int[] { 0, 128, 64, 32 };
 
-    private static final Color BACKGROUND_COLOR               = Color.WHITE;
-
-    private static final float SECTOR_HUE                     = 0.0f;   // Gray.
-    private static final float SECTOR_SATURATION              = 0.0f;
-    private static final float SECTOR_BRIGHTNESS_MIN          = 0.1f;   // Based on light level.
-    private static final float SECTOR_BRIGHTNESS_MAX          = 0.9f;
-    private static final float SELECTED_SECTOR_HUE            = 0.833f; // Slight magenta tint.
-    private static final float SELECTED_SECTOR_SATURATION     = 0.08f;
-    private static final float SELECTED_SECTOR_BRIGHTNESS_MIN = 0.1f;
-    private static final float SELECTED_SECTOR_BRIGHTNESS_MAX = 0.9f;
-    private static final float TAGGED_SECTOR_HUE              = 0.5f;   // Slight cyan tint.
-    private static final float TAGGED_SECTOR_SATURATION       = 0.2f;
-    private static final float TAGGED_SECTOR_BRIGHTNESS_MIN   = 0.1f;
-    private static final float TAGGED_SECTOR_BRIGHTNESS_MAX   = 0.9f;
-
-    private static final Color GRID_COLOR                     = Color.GRAY;
-
-    private static final Color LINE_COLOR                     = Color.BLACK;
-    private static final Color SELECTED_SECTOR_LINE_COLOR     = Color.MAGENTA;
-    private static final Color TAGGED_LINE_COLOR              = Color.CYAN;
-    private static final Color TWO_SIDED_LINE_COLOR           = Color.DARK_GRAY;
-    private static final Color SELECTED_LINE_COLOR            = Color.YELLOW;
-    private static final Color SECRET_LINE_COLOR              = Color.GREEN.darker();
-
-    private static final Color VERTEX_COLOR                   = Color.BLUE;
-
-    private static final Color THING_COLOR                    = Color.BLACK;
-    private static final Color SELECTED_THING_COLOR           = Color.YELLOW;
-    private static final Color PLAYER_THING_COLOR             = Color.WHITE;
-    private static final Color MONSTER_THING_COLOR            = new Color(0x8b4513);
-    private static final Color WEAPON_THING_COLOR             = Color.RED;
-    private static final Color AMMO_THING_COLOR               = Color.RED;
-    private static final Color HEALTH_THING_COLOR             = Color.GREEN;
-    private static final Color ARMOR_THING_COLOR              = Color.BLUE;
-    private static final Color POWER_UP_THING_COLOR           = Color.MAGENTA;
-    private static final Color KEY_THING_COLOR                = Color.MAGENTA;
-    private static final Color OBSTACLE_THING_COLOR           = Color.GRAY;
-    private static final Color DECORATION_THING_COLOR         = Color.LIGHT_GRAY;
-    private static final Color SPECIAL_THING_COLOR            = Color.MAGENTA;
-    private static final Color UNKNOWN_THING_COLOR            = Color.MAGENTA;
-
-
-    private Level level;
-    private int   scale;
+    // The level without highlights is drawn in tiles of TILE_SIZE pixels
+    // square, keeping at most MAX_TILES, and highlights are drawn over them.
+    private static final int   TILE_SIZE     = 256;
+    private static final int   MAX_TILES     = 256;
+
+    // Tiles are rendered off the event thread, building sector shapes and flat
+    // paints as they go, so zooming never waits on them. Tiles not ready yet
+    // are left blank and each is painted when it arrives. Tiles scrolled out
+    // of view before they are started are dropped.
+    private static final ExecutorService tileExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "LevelPanel tiles");
+
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+
+    private Level         level;
+    private LevelRenderer renderer;
 
     private List<SelectionListener> selectionListeners;
     private Line                    selectedLine;
@@ -91,28 +62,28 @@ public class LevelPanel extends JPanel {
     private Sector                  selectedSector;
     private Thing                   selectedThing;
 
-    private int     gridSpacingIndex;
-    private boolean isFloorVisible, isCeilingVisible;
-
-    private Set<Sector>        taggedSectors;
-    private Set<Line>          taggedLines;
+    private int                     gridSpacingIndex;
 
-    private Map<Sector, Area>  sectorAreas;
-    private Map<Sector, Paint> sectorPaints;
-    private static Paint       noFlatPaint;
+    private Map<Point, Image>       tiles;
+    private Map<Point, Future<?>>   pendingTiles;
+    private LevelRenderer           tileRenderer;
+    private int                     tileGeneration;
+    private static Image            blankTile;
+    private Set<Highlight>          highlights;
 
     public LevelPanel() {
         this.selectionListeners = new ArrayList<SelectionListener>();
 
         this.gridSpacingIndex   = 0;
-        this.isFloorVisible     = false;
-        this.isCeilingVisible   = false;
-
-        this.taggedSectors      = new HashSet<Sector>();
-        this.taggedLines        = new HashSet<Line>  ();
 
-        this.sectorAreas        = new HashMap<Sector, Area> ();
-        this.sectorPaints       = new HashMap<Sector, Paint>();
+        this.tiles              = new LinkedHashMap<Point, Image>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Point, Image> eldest) {
+                return size() > MAX_TILES;
+            }
+        };
+        this.pendingTiles       = new HashMap<Point, Future<?>>();
+        this.highlights         = Collections.emptySet();
 
         addMouseMotionListener(new MouseMotionAdapter() {
             @Override
@@ -142,14 +113,14 @@ public class LevelPanel extends JPanel {
                 switch (event.getKeyCode()) {
                     case KeyEvent.VK_ADD:
                         if (event.getKeyLocation() == KeyEvent.KEY_LOCATION_NUMPAD) {
-                            setScale(scale - 1);
+                            setScale(renderer.getScale() - 1);
                         }
 
                         break;
 
                     case KeyEvent.VK_SUBTRACT:
                         if (event.getKeyLocation() == KeyEvent.KEY_LOCATION_NUMPAD) {
-                            setScale(scale + 1);
+                            setScale(renderer.getScale() + 1);
                         }
 
                         break;
@@ -170,49 +141,22 @@ public class LevelPanel extends JPanel {
         });
 
         addSelectionListener(new SelectionListener() {
-            private Line   previousLine   = null;
-            private Sector previousSector = null;
-            
-            public void sideSelected (Side  side)  { repaint(); }
-            public void thingSelected(Thing thing) { repaint(); }
-
             public void lineSelected(Line line) {
-                for (Sector sector: level.taggedSectors(previousLine)) {
-                    sectorPaints.remove(sector);
-                }
-
-                for (Sector sector: level.taggedSectors(line)) {
-                    sectorPaints.remove(sector);
-                }
-
-                updateTags();
-                repaint   ();
+                renderer.setSelectedLine(line);
+                repaintHighlights();
+            }
 
-                previousLine = line;
+            public void sideSelected(Side side) {
             }
 
             public void sectorSelected(Sector sector) {
-                sectorPaints.remove(previousSector);
-                sectorPaints.remove(sector);
-
-                updateTags();
-                repaint   ();
-
-                previousSector = sector;
+                renderer.setSelectedSector(sector);
+                repaintHighlights();
             }
 
-            private void updateTags() {
-                taggedSectors.clear();
-                taggedLines  .clear();
-
-                taggedSectors.addAll(level.taggedSectors(selectedLine));
-                taggedLines  .addAll(level.taggedLines  (selectedSector));
-
-                for (Sector sector: taggedSectors) {
-                    for (Side side: sector.sides()) {
-                        taggedLines.add(side.getLine());
-                    }
-                }
+            public void thingSelected(Thing thing) {
+                renderer.setSelectedThing(thing);
+                repaintHighlights();
             }
         });
 
@@ -225,7 +169,13 @@ public class LevelPanel extends JPanel {
     }
 
     public void show(Level level) {
-        this.level = level;
+        this.level    = level;
+        this.renderer = new LevelRenderer(level);
+
+        renderer.setGridSpacing(GRID_SPACINGS[gridSpacingIndex]);
+        invalidateTiles();
+
+        highlights = renderer.getHighlights();
 
         zoomToMax();
     }
@@ -234,27 +184,29 @@ public class LevelPanel extends JPanel {
     // Scaling and zooming
 
     public void zoomToMax() {
-        setScale((int) ceil(max((level.getMaxX() - level.getMinX()) / (double) getWidth (),
-                                (level.getMaxY() - level.getMinY()) / (double) getHeight())));
+        setScale(renderer.getScaleToFit(getWidth(), getHeight()));
 
         centerViewAt(new Location((short) ((level.getMinX() + level.getMaxX()) / 2),
                                   (short) ((level.getMinY() + level.getMaxY()) / 2)));
     }
 
     public void setScale(final int requestedScale) {
-        sectorAreas .clear();
-        sectorPaints.clear();
-        
         EventQueue.invokeLater(new Runnable() {
             public void run() {
                 Rectangle visibleArea = getVisibleRect();
                 short     centerX     = mapX(visibleArea.x + visibleArea.width  / 2);
                 short     centerY     = mapY(visibleArea.y + visibleArea.height / 2);
+                int       scale       = max(1, min(32, requestedScale));
 
-                scale = max(1, min(32, requestedScale));
+                renderer.setScale(scale);
+                invalidateTiles();
 
-                setPreferredSize(new Dimension((int) ceil((double) LEVEL_WIDTH  / scale),
-                                               (int) ceil((double) LEVEL_HEIGHT / scale)));
+                // Everything is repainted, so the highlights' new areas are
+                // all that is needed.
+                highlights = renderer.getHighlights();
+
+                setPreferredSize(new Dimension((int) ceil((double) LevelRenderer.LEVEL_WIDTH  / scale),
+                                               (int) ceil((double) LevelRenderer.LEVEL_HEIGHT / scale)));
 
                 scrollTo(new Location(centerX, centerY));
 
@@ -348,6 +300,8 @@ public class LevelPanel extends JPanel {
         gridSpacingIndex += increase ? 1 : GRID_SPACINGS.length - 1;
         gridSpacingIndex %= GRID_SPACINGS.length;
 
+        renderer.setGridSpacing(GRID_SPACINGS[gridSpacingIndex]);
+        invalidateTiles();
         repaint();
     }
 
@@ -355,18 +309,16 @@ public class LevelPanel extends JPanel {
     // Floor and ceiling toggling
 
     public void toggleFloor() {
-        isFloorVisible   = !isFloorVisible;
-        isCeilingVisible = false;
-
-        sectorPaints.clear();
+        renderer.setFloorVisible  (!renderer.isFloorVisible());
+        renderer.setCeilingVisible(false);
+        invalidateTiles();
         repaint();
     }
 
     public void toggleCeiling() {
-        isCeilingVisible = !isCeilingVisible;
-        isFloorVisible   = false;
-
-        sectorPaints.clear();
+        renderer.setCeilingVisible(!renderer.isCeilingVisible());
+        renderer.setFloorVisible  (false);
+        invalidateTiles();
         repaint();
     }
 
@@ -376,279 +328,234 @@ public class LevelPanel extends JPanel {
     @Override
     protected void paintComponent(Graphics g) {
         Graphics2D graphics = (Graphics2D) g;
+        Rectangle  area     = graphics.getClipBounds();
 
-        clearCanvas(graphics);
+        if (area == null) {
+            area = new Rectangle(getSize());
+        }
 
-        if (level == null) {
+        if (renderer == null) {
+            graphics.setColor(Color.WHITE);
+            graphics.fill    (area);
             return;
         }
 
+        cancelHiddenTiles();
+
         try {
-            enableAntialiasing(graphics);
-            drawSectors       (graphics);
-            drawGrid          (graphics);
-            drawLines         (graphics);
-            drawVertices      (graphics);
-            drawThings        (graphics);
+            // Highlights are drawn over the tiles by the event thread's
+            // renderer. Waiting for the tiles under them also means the shapes
+            // and paints the renderers share have been built in the background.
+            if (drawTiles(graphics, area)) {
+                drawHighlights(graphics, area);
+            }
         }
         catch (IOException exception) {
             exception.printStackTrace();
         }
     }
 
-    private void clearCanvas(Graphics2D graphics) {
-        graphics.setColor(BACKGROUND_COLOR);
-        graphics.fillRect(0, 0, getSize().width, getSize().height);
-    }
-
-    private void enableAntialiasing(Graphics2D graphics) {
-        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    }
-
-    private void drawSectors(Graphics2D graphics) throws IOException {
-        for (Sector sector: level.sectors()) {
-            graphics.setPaint(getPaint(sector));
-            graphics.fill    (getArea (sector));
-        }
-    }
+    // Whether every tile in the area was ready.
+    private boolean drawTiles(Graphics2D graphics, Rectangle area) {
+        int     firstColumn = area.x / TILE_SIZE, lastColumn = (area.x + area.width  - 1) / TILE_SIZE;
+        int     firstRow    = area.y / TILE_SIZE, lastRow    = (area.y + area.height - 1) / TILE_SIZE;
+        boolean isComplete  = true;
 
+        for (int row = firstRow; row <= lastRow; ++row) {
+            for (int column = firstColumn; column <= lastColumn; ++column) {
+                Image tile = getTile(column, row);
 
-    private Area getArea(Sector sector) {
-        Area area = sectorAreas.get(sector);
+                if (tile != null) {
+                    graphics.drawImage(tile, column * TILE_SIZE, row * TILE_SIZE, null);
+                }
+                else {
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
 
-        if (area == null) {
-            area = createArea(sector);
-            sectorAreas.put(sector, area);
+                    isComplete = false;
+                }
+            }
         }
 
-        return area;
-    }
-
-    private Area createArea(Sector sector) {
-        Area area = new Area();
-        
-        for (List<Side> region: sector.getAdditiveRegions   ()) area.add     (createArea(region));
-        for (List<Side> region: sector.getSubtractiveRegions()) area.subtract(createArea(region));
-        
-        return area;
+        return isComplete;
     }
 
-    private Area createArea(List<Side> region) {
-        Polygon polygon = new Polygon();
+    // The tile, or null if it is still being rendered.
+    private Image getTile(int column, int row) {
+        Point tileNumber = new Point(column, row);
+        Image tile       = tiles.get(tileNumber);
 
-        for (Side side: region) {
-            polygon.addPoint(screenX(side.getStart().getX()), screenY(side.getStart().getY()));
+        if (tile == null && !pendingTiles.containsKey(tileNumber)) {
+            pendingTiles.put(tileNumber, tileExecutor.submit(tileRenderer(tileNumber)));
         }
 
-        return new Area(polygon);
+        return tile;
     }
 
+    private Runnable tileRenderer(final Point tileNumber) {
+        final GraphicsConfiguration configuration = getGraphicsConfiguration();
+        final LevelRenderer         renderer      = getTileRenderer();
+        final int                   generation    = tileGeneration;
 
-    private Paint getPaint(Sector sector) throws IOException {
-        Paint paint = sectorPaints.get(sector);
+        return new Runnable() {
+            public void run() {
+                Image tile = null;
 
-        if (paint == null) {
-            paint = createPaint(sector);
-            sectorPaints.put(sector, paint);
-        }
+                try {
+                    tile = createTile(configuration, renderer, tileNumber.x, tileNumber.y);
+                }
+                catch (IOException exception) {
+                    exception.printStackTrace();
+                }
+                catch (RuntimeException exception) {
+                    exception.printStackTrace();
+                }
 
-        return paint;
-    }
+                final Image finishedTile = tile;
 
-    private Paint createPaint(Sector sector) throws IOException {
-        boolean isSelected    = sector == selectedSector;
-        boolean isTagged      = taggedSectors.contains(sector);
-        float   brightnessMin = isSelected ? SELECTED_SECTOR_BRIGHTNESS_MIN
-                              : isTagged   ? TAGGED_SECTOR_BRIGHTNESS_MIN
-                                           : SECTOR_BRIGHTNESS_MIN;
-        float   brightnessMax = isSelected ? SELECTED_SECTOR_BRIGHTNESS_MAX
-                              : isTagged   ? TAGGED_SECTOR_BRIGHTNESS_MAX
-                                           : SECTOR_BRIGHTNESS_MAX;
-        float   brightness    = (float) (sector.getLightLevel() / 255.0 * (brightnessMax - brightnessMin) + brightnessMin);
-
-        if (isCeilingVisible) {
-            return createFlatPaint(sector.getCeilingFlat(), brightness);
-        }
-        else if (isFloorVisible) {
-            return createFlatPaint(sector.getFloorFlat  (), brightness);
-        }
-        else {
-            // Color sector based on light level.
-            float hue        = isSelected ? SELECTED_SECTOR_HUE
-                             : isTagged   ? TAGGED_SECTOR_HUE
-                                          : SECTOR_HUE;
-            float saturation = isSelected ? SELECTED_SECTOR_SATURATION
-                             : isTagged   ? TAGGED_SECTOR_SATURATION
-                                          : SECTOR_SATURATION;
-
-            return Color.getHSBColor(hue, saturation, brightness);
-        }
-    }
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        // Drop tiles for a scale or settings since changed.
+                        if (generation != tileGeneration) {
+                            return;
+                        }
 
-    private Paint createFlatPaint(Flat flat, float brightness) throws IOException {
-        if (flat == null) {
-            return getNoFlatPaint();
-        }
-        
-        RescaleOp     rescaleOp     = new RescaleOp(brightness, 0.0f, null);
-        BufferedImage flatImage     = flat.getImage();
-        BufferedImage scalableImage = new BufferedImage(Flat.WIDTH, Flat.HEIGHT, BufferedImage.TYPE_INT_RGB);
-        Graphics2D    graphics      = scalableImage.createGraphics();
-
-        graphics.drawImage(flatImage, 0, 0, null);
-        graphics.dispose  ();
-
-        return new TexturePaint(
-            rescaleOp.filter(scalableImage, null),
-            new Rectangle2D.Double(screenX((short) 0), screenY((short) 0),
-                                   (double) Flat.WIDTH / scale, (double) Flat.HEIGHT / scale)
-        );
+                        // A tile that failed would most likely fail again, so
+                        // it is left blank rather than retried, and no longer
+                        // holds back the highlights over it.
+                        tiles       .put   (tileNumber, finishedTile != null ? finishedTile : getBlankTile());
+                        pendingTiles.remove(tileNumber);
+
+                        repaint(tileNumber.x * TILE_SIZE, tileNumber.y * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                    }
+                });
+            }
+        };
     }
 
-    private Paint getNoFlatPaint() {
-        if (noFlatPaint == null) {
-            BufferedImage noFlatImage = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
-            Graphics2D    graphics    = noFlatImage.createGraphics();
+    private static synchronized Image getBlankTile() {
+        if (blankTile == null) {
+            BufferedImage image    = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+            Graphics2D    graphics = image.createGraphics();
 
-            graphics.setColor (Color.WHITE);
-            graphics.fillRect (0, 0, 8, 8);
-            graphics.setStroke(new BasicStroke(2));
-            graphics.setColor (Color.MAGENTA);
-            graphics.drawLine (4, 0, 0, 4);
-            graphics.drawLine (8, 4, 4, 8);
-            graphics.dispose  ();
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+            graphics.dispose ();
 
-            noFlatPaint = new TexturePaint(noFlatImage, new Rectangle(0, 0, 8, 8));
+            blankTile = image;
         }
 
-        return noFlatPaint;
+        return blankTile;
     }
 
+    // The background thread has its own renderer, as renderers are not thread
+    // safe, made afresh for each generation of tiles with the current settings.
+    // It shares its caches with the event thread's renderer, which then finds
+    // the shapes and paints of highlighted sectors already built.
+    private LevelRenderer getTileRenderer() {
+        if (tileRenderer == null) {
+            tileRenderer = new LevelRenderer(level);
 
-    private void drawGrid(Graphics2D graphics) {
-        int spacing = GRID_SPACINGS[gridSpacingIndex];
-
-        if (spacing == 0) {
-            return;
+            tileRenderer.setScale         (renderer.getScale());
+            tileRenderer.setGridSpacing   (renderer.getGridSpacing());
+            tileRenderer.setFloorVisible  (renderer.isFloorVisible());
+            tileRenderer.setCeilingVisible(renderer.isCeilingVisible());
+            tileRenderer.shareCaches      (renderer);
         }
 
-        Rectangle clip   = graphics.getClipBounds();
-        short     left   = mapX(clip.x);
-        short     right  = mapX(clip.x + clip.width);
-        short     bottom = mapY(clip.y + clip.height);
-        short     top    = mapY(clip.y);
+        return tileRenderer;
+    }
 
-        left   += spacing - left   % spacing;
-        bottom += spacing - bottom % spacing;
-        right  -= right % spacing;
-        top    -= top   % spacing;
+    // Cancels tiles not yet started that are out of view, so tiles scrolled to
+    // are not kept waiting behind them. They are asked for again if scrolled
+    // back to.
+    private void cancelHiddenTiles() {
+        Rectangle visibleArea = getVisibleRect();
 
-        graphics.setColor(GRID_COLOR);
+        for (Iterator<Map.Entry<Point, Future<?>>> iterator = pendingTiles.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Point, Future<?>> pendingTile = iterator.next();
+            Point                       tileNumber  = pendingTile.getKey();
+            Rectangle                   tileArea    = new Rectangle(tileNumber.x * TILE_SIZE, tileNumber.y * TILE_SIZE,
+                                                                    TILE_SIZE, TILE_SIZE);
 
-        for (int x = left; x <= right; x += spacing) {
-            graphics.drawLine(screenX(x), 0, screenX(x), getHeight());
+            if (!tileArea.intersects(visibleArea) && pendingTile.getValue().cancel(false)) {
+                iterator.remove();
+            }
         }
+    }
 
-        for (int y = bottom; y <= top; y += spacing) {
-            graphics.drawLine(0, screenY(y), getWidth(), screenY(y));
+    // Discards the tiles, cancelling those not yet started. Any still being
+    // rendered are dropped when they finish.
+    private void invalidateTiles() {
+        for (Future<?> pendingTile: pendingTiles.values()) {
+            pendingTile.cancel(false);
         }
+
+        tiles       .clear();
+        pendingTiles.clear();
+        tileRenderer = null;
+
+        ++tileGeneration;
     }
 
-    private void drawLines(Graphics2D graphics) {
-        for (Line line: level.lines()) {
-            graphics.setStroke(new BasicStroke());
+    // Compatible images are kept in the format of the screen, and Java2D can
+    // cache them in video memory.
+    private static Image createTile(GraphicsConfiguration configuration, LevelRenderer renderer, int column, int row)
+        throws IOException
+    {
+        BufferedImage tile     = configuration == null
+                               ? new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB)
+                               : configuration.createCompatibleImage(TILE_SIZE, TILE_SIZE);
+        Graphics2D    graphics = tile.createGraphics();
 
-            if (line == selectedLine) {
-                graphics.setColor (SELECTED_LINE_COLOR);
-                graphics.setStroke(new BasicStroke(1.5f));
-            }
-            else if (taggedLines.contains(line)) {
-                graphics.setColor (TAGGED_LINE_COLOR);
-                graphics.setStroke(new BasicStroke(1.5f));
-            }
-            else if (selectedSector != null && selectedSector.containsLine(line)) {
-                graphics.setColor (SELECTED_SECTOR_LINE_COLOR);
-                graphics.setStroke(new BasicStroke(1.5f));
-            }
-            else if ((line.getFlags() & Line.SECRET) != 0) {
-                graphics.setColor(SECRET_LINE_COLOR);
-            }
-            else if ((line.getFlags() & Line.TWO_SIDED) != 0) {
-                graphics.setColor(TWO_SIDED_LINE_COLOR);
-            }
-            else {
-                graphics.setColor(LINE_COLOR);
-            }
+        try {
+            graphics.translate(-column * TILE_SIZE, -row * TILE_SIZE);
 
-            graphics.drawLine(screenX(line.getStart().getX()), screenY(line.getStart().getY()),
-                              screenX(line.getEnd  ().getX()), screenY(line.getEnd  ().getY()));
+            renderer.paintBase(graphics, new Rectangle(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE));
+        }
+        finally {
+            graphics.dispose();
         }
 
-        graphics.setStroke(new BasicStroke());
+        return tile;
     }
 
-    private void drawVertices(Graphics2D graphics) {
-        graphics.setColor(VERTEX_COLOR);
+    // Draws the highlights over the tiles in the area.
+    private void drawHighlights(Graphics2D graphics, Rectangle area) throws IOException {
+        Graphics2D overlay = (Graphics2D) graphics.create();
 
-        for (Vertex vertex: level.vertices()) {
-            graphics.fillRect(screenX(vertex.getX()) - 1, screenY(vertex.getY()) - 1, 3, 3);
+        try {
+            renderer.paintHighlights(overlay, area);
+        }
+        finally {
+            overlay.dispose();
         }
     }
 
-    private void drawThings(Graphics2D graphics) {
-        for (Thing thing: level.things()) {
-            switch (thing.getKind()) {
-                case PLAYER:     graphics.setColor(PLAYER_THING_COLOR);     break;
-                case MONSTER:    graphics.setColor(MONSTER_THING_COLOR);    break;
-                case WEAPON:     graphics.setColor(WEAPON_THING_COLOR);     break;
-                case AMMO:       graphics.setColor(AMMO_THING_COLOR);       break;
-                case HEALTH:     graphics.setColor(HEALTH_THING_COLOR);     break;
-                case ARMOR:      graphics.setColor(ARMOR_THING_COLOR);      break;
-                case POWER_UP:   graphics.setColor(POWER_UP_THING_COLOR);   break;
-                case KEY:        graphics.setColor(KEY_THING_COLOR);        break;
-                case OBSTACLE:   graphics.setColor(OBSTACLE_THING_COLOR);   break;
-                case DECORATION: graphics.setColor(DECORATION_THING_COLOR); break;
-                case SPECIAL:    graphics.setColor(SPECIAL_THING_COLOR);    break;
-                case UNKNOWN:    graphics.setColor(UNKNOWN_THING_COLOR) ;   break;
-            }
-
-            int   screenRadius = thing.getRadius() / scale;
-            Shape circle       = new Ellipse2D.Double(screenX(thing.getLocation().getX()) - screenRadius,
-                                                      screenY(thing.getLocation().getY()) - screenRadius,
-                                                      screenRadius * 2, screenRadius * 2);
-
-            graphics.fill(circle);
+    // Repaints only where highlights came or went, so moving from one line to
+    // the next in a selected sector does not repaint the whole sector.
+    private void repaintHighlights() {
+        Set<Highlight> oldHighlights = highlights;
 
-            if (thing == selectedThing) {
-                graphics.setColor (SELECTED_THING_COLOR);
-                graphics.setStroke(new BasicStroke(1.5f));
-            }
-            else {
-                graphics.setColor(THING_COLOR);
-            }
-
-            graphics.draw(circle);
+        highlights = renderer.getHighlights();
 
-            if (thing.isDirectional()) {
-                double startX = thing.getLocation().getX();
-                double startY = thing.getLocation().getY();
-                double endX   = startX + thing.getRadius() * cos(thing.getAngle() * PI / 180);
-                double endY   = startY + thing.getRadius() * sin(thing.getAngle() * PI / 180);
-
-                graphics.drawLine(screenX((short) startX), screenY((short) startY),
-                                  screenX((short) endX),   screenY((short) endY));
+        for (Highlight highlight: oldHighlights) {
+            if (!highlights.contains(highlight)) {
+                repaint(highlight.getArea());
             }
+        }
 
-            if (thing == selectedThing) {
-                graphics.setStroke(new BasicStroke());
+        for (Highlight highlight: highlights) {
+            if (!oldHighlights.contains(highlight)) {
+                repaint(highlight.getArea());
             }
         }
     }
 
-    private int   screenX(int x) { return (x - LEVEL_LEFT) / scale + 1; }
-    private int   screenY(int y) { return (LEVEL_TOP - y)  / scale + 1; }
-    private short mapX   (int x) { return (short) ((x - 1) * scale + LEVEL_LEFT); }
-    private short mapY   (int y) { return (short) (LEVEL_TOP - (y - 1) * scale);  }
+    private int   screenX(int x) { return renderer.screenX(x); }
+    private int   screenY(int y) { return renderer.screenY(y); }
+    private short mapX   (int x) { return renderer.mapX   (x); }
+    private short mapY   (int y) { return renderer.mapY   (y); }
 
 
     private Location mouseLocation() {
@@ -658,7 +565,6 @@ public class LevelPanel extends JPanel {
             return null;
         }
 
-        return new Location((short) ((mousePosition.x - 1) * scale + LEVEL_LEFT),
-                            (short) (LEVEL_TOP - (mousePosition.y - 1) * scale));
+        return new Location(mapX(mousePosition.x), mapY(mousePosition.y));
     }
 }
@@ -0,0 +1,764 @@
+package name.kugelman.john.kdoom.gui;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import name.kugelman.john.kdoom.model.*;
+
+import static java.lang.Math.*;
+
+// Draws a level's sectors, grid, lines, vertices and things onto any
+// Graphics2D, with no ties to Swing, so levels can be drawn by LevelPanel or
+// straight into images. Screen coordinates cover the whole 16-bit map space at
+// the scale, one pixel for every scale map units, with map y pointing up.
+//
+// Selecting a line, sector or thing highlights it and what it is tagged with.
+// paintBase draws the level without highlights, so it can be cached,
+// paintHighlights draws them over it, and getHighlights says where each is.
+//
+// A renderer caches sector paints and screen shapes for its scale and
+// settings, and one renderer must not be used by two threads at once. Those
+// caches can be shared with a renderer on another thread, though, see
+// shareCaches. The screen shapes are snapped from map coordinate shapes the
+// sectors keep themselves and share at every scale.
+public class LevelRenderer {
+    public static final int LEVEL_LEFT   = Short.MIN_VALUE;
+    public static final int LEVEL_RIGHT  = Short.MAX_VALUE;
+    public static final int LEVEL_BOTTOM = Short.MIN_VALUE;
+    public static final int LEVEL_TOP    = Short.MAX_VALUE;
+    public static final int LEVEL_WIDTH  = LEVEL_RIGHT - LEVEL_LEFT   + 1;
+    public static final int LEVEL_HEIGHT = LEVEL_TOP   - LEVEL_BOTTOM + 1;
+
+    private static final Color BACKGROUND_COLOR               = Color.WHITE;
+
+    private static final float SECTOR_HUE                     = 0.0f;   // Gray.
+    private static final float SECTOR_SATURATION              = 0.0f;
+    private static final float SECTOR_BRIGHTNESS_MIN          = 0.1f;   // Based on light level.
+    private static final float SECTOR_BRIGHTNESS_MAX          = 0.9f;
+    private static final float SELECTED_SECTOR_HUE            = 0.833f; // Slight magenta tint.
+    private static final float SELECTED_SECTOR_SATURATION     = 0.08f;
+    private static final float SELECTED_SECTOR_BRIGHTNESS_MIN = 0.1f;
+    private static final float SELECTED_SECTOR_BRIGHTNESS_MAX = 0.9f;
+    private static final float TAGGED_SECTOR_HUE              = 0.5f;   // Slight cyan tint.
+    private static final float TAGGED_SECTOR_SATURATION       = 0.2f;
+    private static final float TAGGED_SECTOR_BRIGHTNESS_MIN   = 0.1f;
+    private static final float TAGGED_SECTOR_BRIGHTNESS_MAX   = 0.9f;
+
+    private static final Color GRID_COLOR                     = Color.GRAY;
+
+    private static final Color LINE_COLOR                     = Color.BLACK;
+    private static final Color SELECTED_SECTOR_LINE_COLOR     = Color.MAGENTA;
+    private static final Color TAGGED_LINE_COLOR              = Color.CYAN;
+    private static final Color TWO_SIDED_LINE_COLOR           = Color.DARK_GRAY;
+    private static final Color SELECTED_LINE_COLOR            = Color.YELLOW;
+    private static final Color SECRET_LINE_COLOR              = Color.GREEN.darker();
+
+    private static final Color VERTEX_COLOR                   = Color.BLUE;
+
+    private static final Color THING_COLOR                    = Color.BLACK;
+    private static final Color SELECTED_THING_COLOR           = Color.YELLOW;
+    private static final Color PLAYER_THING_COLOR             = Color.WHITE;
+    private static final Color MONSTER_THING_COLOR            = new Color(0x8b4513);
+    private static final Color WEAPON_THING_COLOR             = Color.RED;
+    private static final Color AMMO_THING_COLOR               = Color.RED;
+    private static final Color HEALTH_THING_COLOR             = Color.GREEN;
+    private static final Color ARMOR_THING_COLOR              = Color.BLUE;
+    private static final Color POWER_UP_THING_COLOR           = Color.MAGENTA;
+    private static final Color KEY_THING_COLOR                = Color.MAGENTA;
+    private static final Color OBSTACLE_THING_COLOR           = Color.GRAY;
+    private static final Color DECORATION_THING_COLOR         = Color.LIGHT_GRAY;
+    private static final Color SPECIAL_THING_COLOR            = Color.MAGENTA;
+    private static final Color UNKNOWN_THING_COLOR            = Color.MAGENTA;
+
+    // Margin around the level in images from render(), in pixels.
+    private static final int   MARGIN                         = 4;
+
+    // Level of detail. From DETAIL_MIN_SCALE on, sector outlines lose detail
+    // under half a pixel, in buckets of powers of two scales so each sector
+    // keeps a few simplified shapes, and are filled without antialiasing, as
+    // lines are drawn over their edges anyway. Vertices are only marked up to
+    // VERTEX_MAX_SCALE, things only drawn with a radius of THING_MIN_RADIUS
+    // pixels or more, and lines shorter than a pixel not drawn at all.
+    private static final int   DETAIL_MIN_SCALE               = 4;
+    private static final int   VERTEX_MAX_SCALE               = 4;
+    private static final int   THING_MIN_RADIUS               = 1;
+
+
+    private Level level;
+    private int   scale;
+
+    private int     gridSpacing;
+    private boolean isFloorVisible, isCeilingVisible;
+
+    private Line                selectedLine;
+    private Sector              selectedSector;
+    private Thing               selectedThing;
+    private Set<Sector>         taggedSectors;
+    private Set<Line>           taggedLines;
+
+    private Map<Sector, Shape>  sectorShapes;
+    private Map<Sector, Paint>  sectorPaints;
+    private Map<Sector, Paint>  highlightPaints;
+    private static Paint        noFlatPaint;
+
+    public LevelRenderer(Level level) {
+        this.level            = level;
+        this.scale            = 1;
+
+        this.gridSpacing      = 0;
+        this.isFloorVisible   = false;
+        this.isCeilingVisible = false;
+
+        this.taggedSectors    = new HashSet<Sector>();
+        this.taggedLines      = new HashSet<Line>  ();
+
+        this.sectorShapes     = new ConcurrentHashMap<Sector, Shape>();
+        this.sectorPaints     = new ConcurrentHashMap<Sector, Paint>();
+        this.highlightPaints  = new HashMap<Sector, Paint>();
+    }
+
+
+    public Level getLevel() {
+        return level;
+    }
+
+
+    // Scale
+
+    public int getScale() {
+        return scale;
+    }
+
+    // Map units per pixel.
+    public void setScale(int scale) {
+        if (scale < 1) {
+            throw new IllegalArgumentException("Scale " + scale + " is less than 1.");
+        }
+
+        this.scale = scale;
+
+        sectorShapes = new ConcurrentHashMap<Sector, Shape>();
+        sectorPaints = new ConcurrentHashMap<Sector, Paint>();
+        highlightPaints.clear();
+    }
+
+    // The smallest scale at which the whole level fits in the given size.
+    public int getScaleToFit(int width, int height) {
+        return max(1, (int) ceil(max((level.getMaxX() - level.getMinX()) / (double) max(1, width),
+                                     (level.getMaxY() - level.getMinY()) / (double) max(1, height))));
+    }
+
+    // The level's extent in screen coordinates.
+    public Rectangle getBounds() {
+        return new Rectangle(screenX(level.getMinX()), screenY(level.getMaxY()),
+                             screenX(level.getMaxX()) - screenX(level.getMinX()) + 1,
+                             screenY(level.getMinY()) - screenY(level.getMaxY()) + 1);
+    }
+
+    public int   screenX(int x) { return (x - LEVEL_LEFT) / scale + 1; }
+    public int   screenY(int y) { return (LEVEL_TOP - y)  / scale + 1; }
+    public short mapX   (int x) { return (short) ((x - 1) * scale + LEVEL_LEFT); }
+    public short mapY   (int y) { return (short) (LEVEL_TOP - (y - 1) * scale);  }
+
+
+    // Settings
+
+    public int getGridSpacing() {
+        return gridSpacing;
+    }
+
+    // In map units, or 0 for no grid.
+    public void setGridSpacing(int gridSpacing) {
+        this.gridSpacing = gridSpacing;
+    }
+
+    public boolean isFloorVisible() {
+        return isFloorVisible;
+    }
+
+    public void setFloorVisible(boolean isFloorVisible) {
+        this.isFloorVisible = isFloorVisible;
+
+        sectorPaints = new ConcurrentHashMap<Sector, Paint>();
+        highlightPaints.clear();
+    }
+
+    public boolean isCeilingVisible() {
+        return isCeilingVisible;
+    }
+
+    public void setCeilingVisible(boolean isCeilingVisible) {
+        this.isCeilingVisible = isCeilingVisible;
+
+        sectorPaints = new ConcurrentHashMap<Sector, Paint>();
+        highlightPaints.clear();
+    }
+
+    // Uses the screen shapes and sector paints of another renderer with the
+    // same level, scale and settings, so whichever draws a sector first builds
+    // them for both, even on different threads. Changing the scale or settings
+    // of either gives it caches of its own again, leaving the other's alone.
+    public void shareCaches(LevelRenderer renderer) {
+        sectorShapes = renderer.sectorShapes;
+        sectorPaints = renderer.sectorPaints;
+    }
+
+
+    // Highlighting. Selecting a line highlights the sectors it tags, and
+    // selecting a sector the lines tagging it.
+
+    public void setSelectedLine(Line line) {
+        selectedLine = line;
+
+        updateTags();
+    }
+
+    public void setSelectedSector(Sector sector) {
+        selectedSector = sector;
+
+        updateTags();
+    }
+
+    public void setSelectedThing(Thing thing) {
+        selectedThing = thing;
+    }
+
+    private void updateTags() {
+        taggedSectors  .clear();
+        taggedLines    .clear();
+        highlightPaints.clear();
+
+        taggedSectors.addAll(level.taggedSectors(selectedLine));
+        taggedLines  .addAll(level.taggedLines  (selectedSector));
+
+        for (Sector sector: taggedSectors) {
+            for (Side side: sector.sides()) {
+                taggedLines.add(side.getLine());
+            }
+        }
+    }
+
+    // What is highlighted now.
+    public Set<Highlight> getHighlights() {
+        Set<Highlight> highlights = new HashSet<Highlight>();
+
+        if (selectedSector != null) {
+            highlights.add(new Highlight(selectedSector, true, getBounds(selectedSector)));
+        }
+
+        for (Sector sector: taggedSectors) {
+            highlights.add(new Highlight(sector, false, getBounds(sector)));
+        }
+
+        for (Line line: taggedLines) {
+            highlights.add(new Highlight(line, false, getBounds(line)));
+        }
+
+        if (selectedLine != null) {
+            highlights.add(new Highlight(selectedLine, true, getBounds(selectedLine)));
+        }
+
+        if (selectedThing != null) {
+            highlights.add(new Highlight(selectedThing, true, getBounds(selectedThing)));
+        }
+
+        return Collections.unmodifiableSet(highlights);
+    }
+
+    private Rectangle getBounds(Sector sector) {
+        return getBounds(sector.getMinX(), sector.getMinY(), sector.getMaxX(), sector.getMaxY(), 2);
+    }
+
+    private Rectangle getBounds(Line line) {
+        return getBounds(min(line.getStart().getX(), line.getEnd().getX()),
+                         min(line.getStart().getY(), line.getEnd().getY()),
+                         max(line.getStart().getX(), line.getEnd().getX()),
+                         max(line.getStart().getY(), line.getEnd().getY()), 2);
+    }
+
+    private Rectangle getBounds(Thing thing) {
+        Location location = thing.getLocation();
+        int      radius   = thing.getRadius();
+
+        return getBounds(location.getX() - radius, location.getY() - radius,
+                         location.getX() + radius, location.getY() + radius, 2);
+    }
+
+    // Map bounds in screen coordinates, grown by a number of pixels for
+    // strokes and markers.
+    private Rectangle getBounds(int minX, int minY, int maxX, int maxY, int pixels) {
+        return new Rectangle(screenX(minX) - pixels, screenY(maxY) - pixels,
+                             screenX(maxX) - screenX(minX) + 1 + pixels * 2,
+                             screenY(minY) - screenY(maxY) + 1 + pixels * 2);
+    }
+
+
+    // Drawing
+
+    // Draws the part of the level inside area, in screen coordinates. Anything
+    // outside area may or may not be drawn.
+    public void paint(Graphics2D graphics, Rectangle area) throws IOException {
+        paintBase      (graphics, area);
+        paintHighlights(graphics, area);
+    }
+
+    // The same, without highlights.
+    public void paintBase(Graphics2D graphics, Rectangle area) throws IOException {
+        graphics.setColor(BACKGROUND_COLOR);
+        graphics.fill    (area);
+
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        drawSectors (graphics, area);
+        drawGrid    (graphics, area);
+        drawLines   (graphics, area);
+        drawVertices(graphics, area);
+        drawThings  (graphics, area);
+    }
+
+    // Draws just the highlights inside area over what paintBase drew there.
+    // Highlighted sectors are filled again, clipped to their shapes, with
+    // whatever lies on them drawn over the fill, then the highlighted lines
+    // and the selected thing go on top. Nothing else is visited.
+    public void paintHighlights(Graphics2D graphics, Rectangle area) throws IOException {
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        Set<Sector> sectors = new LinkedHashSet<Sector>();
+
+        if (selectedSector != null) {
+            sectors.add(selectedSector);
+        }
+
+        sectors.addAll(taggedSectors);
+
+        for (Sector sector: sectors) {
+            if (!intersects(area, sector.getMinX(), sector.getMinY(), sector.getMaxX(), sector.getMaxY(), 0)) {
+                continue;
+            }
+
+            Rectangle  sectorArea     = area.intersection(getBounds(sector));
+            Shape      shape          = getScreenShape(sector);
+            Graphics2D sectorGraphics = (Graphics2D) graphics.create();
+
+            try {
+                sectorGraphics.clip(shape);
+
+                if (scale >= DETAIL_MIN_SCALE) {
+                    sectorGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+                }
+
+                sectorGraphics.setPaint(getPaint(sector, true));
+                sectorGraphics.fill    (shape);
+                sectorGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+                drawGrid    (sectorGraphics, sectorArea);
+                drawLines   (sectorGraphics, sectorArea);
+                drawVertices(sectorGraphics, sectorArea);
+                drawThings  (sectorGraphics, sectorArea);
+            }
+            finally {
+                sectorGraphics.dispose();
+            }
+        }
+
+        // Lines in the order of their highlight's precedence, so the strongest
+        // is drawn last where they cross.
+        Set<Line> lines = new LinkedHashSet<Line>();
+
+        if (selectedSector != null) {
+            for (Side side: selectedSector.sides()) {
+                lines.add(side.getLine());
+            }
+        }
+
+        lines.addAll(taggedLines);
+
+        if (selectedLine != null) {
+            lines.add(selectedLine);
+        }
+
+        for (Line line: lines) {
+            drawLine(graphics, area, line, true);
+        }
+
+        graphics.setStroke(new BasicStroke());
+
+        if (selectedThing != null && intersects(area, selectedThing.getLocation(), selectedThing.getRadius())) {
+            drawThing(graphics, selectedThing, true);
+        }
+    }
+
+    // An image of the whole level at the current scale, with a small margin.
+    public BufferedImage render() throws IOException {
+        Rectangle bounds = getBounds();
+
+        bounds.grow(MARGIN, MARGIN);
+
+        return render(bounds);
+    }
+
+    // An image of an area in screen coordinates.
+    public BufferedImage render(Rectangle area) throws IOException {
+        BufferedImage image    = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D    graphics = image.createGraphics();
+
+        try {
+            graphics.translate(-area.x, -area.y);
+
+            paint(graphics, area);
+        }
+        finally {
+            graphics.dispose();
+        }
+
+        return image;
+    }
+
+    // Whether nothing but background and grid would be drawn in the area. Lines
+    // and vertices all border sectors, so only sectors and things are checked.
+    public boolean isEmpty(Rectangle area) {
+        for (Sector sector: level.getSectorsIn(left(area), bottom(area), right(area), top(area))) {
+            if (intersects(area, sector.getMinX(), sector.getMinY(), sector.getMaxX(), sector.getMaxY(), 2)) {
+                return false;
+            }
+        }
+
+        for (Thing thing: level.getThingsIn(left(area), bottom(area), right(area), top(area))) {
+            if (intersects(area, thing.getLocation(), thing.getRadius())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Whether map bounds, grown by a number of pixels for strokes and markers,
+    // touch an area in screen coordinates.
+    private boolean intersects(Rectangle area, int minX, int minY, int maxX, int maxY, int pixels) {
+        return screenX(maxX) + pixels >= area.x && screenX(minX) - pixels < area.x + area.width
+            && screenY(minY) + pixels >= area.y && screenY(maxY) - pixels < area.y + area.height;
+    }
+
+    private boolean intersects(Rectangle area, Location location, int radius) {
+        return intersects(area, location.getX() - radius, location.getY() - radius,
+                                location.getX() + radius, location.getY() + radius, 2);
+    }
+
+    // Map bounds covering an area in screen coordinates, with room for the two
+    // pixel margin above and for rounding, for querying the level's spatial
+    // grids. Not cast to shorts, as the area may reach past the map.
+    private int left  (Rectangle area) { return (area.x - 4)                 * scale + LEVEL_LEFT; }
+    private int right (Rectangle area) { return (area.x + area.width  + 2)   * scale + LEVEL_LEFT; }
+    private int top   (Rectangle area) { return LEVEL_TOP - (area.y - 4)               * scale; }
+    private int bottom(Rectangle area) { return LEVEL_TOP - (area.y + area.height + 2) * scale; }
+
+
+    private void drawSectors(Graphics2D graphics, Rectangle area) throws IOException {
+        if (scale >= DETAIL_MIN_SCALE) {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        }
+
+        for (Sector sector: level.getSectorsIn(left(area), bottom(area), right(area), top(area))) {
+            // Skip sectors entirely outside the area being drawn.
+            if (!intersects(area, sector.getMinX(), sector.getMinY(), sector.getMaxX(), sector.getMaxY(), 0)) {
+                continue;
+            }
+
+            graphics.setPaint(getPaint(sector, false));
+            graphics.fill    (getScreenShape(sector));
+        }
+
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+
+    // Screen shapes only depend on the scale, so every tile drawn at it shares
+    // them.
+    private Shape getScreenShape(Sector sector) {
+        Shape shape = sectorShapes.get(sector);
+
+        if (shape == null) {
+            shape = toScreen(sector.getShape(getDetailTolerance()));
+            sectorShapes.put(sector, shape);
+        }
+
+        return shape;
+    }
+
+    // In map units.
+    private int getDetailTolerance() {
+        return scale < DETAIL_MIN_SCALE ? 0 : Integer.highestOneBit(scale) / 2;
+    }
+
+    // A shape in map coordinates with its points moved through screenX and
+    // screenY. Snapping to whole pixels, as a scaling AffineTransform would
+    // not, keeps fills lined up with lines and the same whichever tile they
+    // are drawn in.
+    private Shape toScreen(Shape shape) {
+        Path2D  screenShape = new Path2D.Float(Path2D.WIND_EVEN_ODD);
+        float[] coordinates = new float[6];
+
+        for (PathIterator iterator = shape.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+            switch (iterator.currentSegment(coordinates)) {
+                case PathIterator.SEG_MOVETO:
+                    screenShape.moveTo(screenX((int) coordinates[0]), screenY((int) coordinates[1]));
+                    break;
+
+                case PathIterator.SEG_LINETO:
+                    screenShape.lineTo(screenX((int) coordinates[0]), screenY((int) coordinates[1]));
+                    break;
+
+                case PathIterator.SEG_CLOSE:
+                    screenShape.closePath();
+                    break;
+            }
+        }
+
+        return screenShape;
+    }
+
+
+    // Flats look the same highlighted or not, so only colors are highlighted.
+    // Those change with every selection, so they are cached apart from the
+    // rest.
+    private Paint getPaint(Sector sector, boolean isHighlighting) throws IOException {
+        boolean            isColored  = !isFloorVisible && !isCeilingVisible;
+        boolean            isSelected = isColored && isHighlighting && sector == selectedSector;
+        boolean            isTagged   = isColored && isHighlighting && taggedSectors.contains(sector);
+        Map<Sector, Paint> paints     = isSelected || isTagged ? highlightPaints : sectorPaints;
+        Paint              paint      = paints.get(sector);
+
+        if (paint == null) {
+            paint = createPaint(sector, isSelected, isTagged);
+            paints.put(sector, paint);
+        }
+
+        return paint;
+    }
+
+    private Paint createPaint(Sector sector, boolean isSelected, boolean isTagged) throws IOException {
+        float brightnessMin = isSelected ? SELECTED_SECTOR_BRIGHTNESS_MIN
+                            : isTagged   ? TAGGED_SECTOR_BRIGHTNESS_MIN
+                                         : SECTOR_BRIGHTNESS_MIN;
+        float brightnessMax = isSelected ? SELECTED_SECTOR_BRIGHTNESS_MAX
+                            : isTagged   ? TAGGED_SECTOR_BRIGHTNESS_MAX
+                                         : SECTOR_BRIGHTNESS_MAX;
+        float brightness    = (float) (sector.getLightLevel() / 255.0 * (brightnessMax - brightnessMin) + brightnessMin);
+
+        if (isCeilingVisible) {
+            return createFlatPaint(sector.getCeilingFlat(), sector.getLightLevel());
+        }
+        else if (isFloorVisible) {
+            return createFlatPaint(sector.getFloorFlat  (), sector.getLightLevel());
+        }
+        else {
+            // Color sector based on light level.
+            float hue        = isSelected ? SELECTED_SECTOR_HUE
+                             : isTagged   ? TAGGED_SECTOR_HUE
+                                          : SECTOR_HUE;
+            float saturation = isSelected ? SELECTED_SECTOR_SATURATION
+                             : isTagged   ? TAGGED_SECTOR_SATURATION
+                                          : SECTOR_SATURATION;
+
+            return Color.getHSBColor(hue, saturation, brightness);
+        }
+    }
+
+    private Paint createFlatPaint(Flat flat, int lightLevel) throws IOException {
+        if (flat == null) {
+            return getNoFlatPaint();
+        }
+
+        // Shade the way the engine does, by remapping palette indices through
+        // the COLORMAP table for the light level. The result stays 8-bit.
+        IndexedImage shaded = Resources.getColorMap().apply(flat.getIndexedImage(),
+                                                            ColorMap.forLightLevel(lightLevel));
+
+        return new TexturePaint(
+            shaded.toOpaqueImage(Resources.getPalette().getColorModel()),
+            new Rectangle2D.Double(screenX((short) 0), screenY((short) 0),
+                                   (double) Flat.WIDTH / scale, (double) Flat.HEIGHT / scale)
+        );
+    }
+
+    private static synchronized Paint getNoFlatPaint() {
+        if (noFlatPaint == null) {
+            BufferedImage noFlatImage = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+            Graphics2D    graphics    = noFlatImage.createGraphics();
+
+            graphics.setColor (Color.WHITE);
+            graphics.fillRect (0, 0, 8, 8);
+            graphics.setStroke(new BasicStroke(2));
+            graphics.setColor (Color.MAGENTA);
+            graphics.drawLine (4, 0, 0, 4);
+            graphics.drawLine (8, 4, 4, 8);
+            graphics.dispose  ();
+
+            noFlatPaint = new TexturePaint(noFlatImage, new Rectangle(0, 0, 8, 8));
+        }
+
+        return noFlatPaint;
+    }
+
+
+    private void drawGrid(Graphics2D graphics, Rectangle area) {
+        int spacing = gridSpacing;
+
+        if (spacing == 0) {
+            return;
+        }
+
+        short left   = mapX(area.x);
+        short right  = mapX(area.x + area.width);
+        short bottom = mapY(area.y + area.height);
+        short top    = mapY(area.y);
+
+        left   += spacing - left   % spacing;
+        bottom += spacing - bottom % spacing;
+        right  -= right % spacing;
+        top    -= top   % spacing;
+
+        graphics.setColor(GRID_COLOR);
+
+        for (int x = left; x <= right; x += spacing) {
+            graphics.drawLine(screenX(x), area.y, screenX(x), area.y + area.height);
+        }
+
+        for (int y = bottom; y <= top; y += spacing) {
+            graphics.drawLine(area.x, screenY(y), area.x + area.width, screenY(y));
+        }
+    }
+
+    private void drawLines(Graphics2D graphics, Rectangle area) {
+        for (Line line: level.getLinesIn(left(area), bottom(area), right(area), top(area))) {
+            drawLine(graphics, area, line, false);
+        }
+
+        graphics.setStroke(new BasicStroke());
+    }
+
+    private void drawLine(Graphics2D graphics, Rectangle area, Line line, boolean isHighlighting) {
+        if (!intersects(area, min(line.getStart().getX(), line.getEnd().getX()),
+                              min(line.getStart().getY(), line.getEnd().getY()),
+                              max(line.getStart().getX(), line.getEnd().getX()),
+                              max(line.getStart().getY(), line.getEnd().getY()), 2))
+        {
+            return;
+        }
+
+        // Collapsed to a point, which the lines meeting it draw anyway.
+        if (screenX(line.getStart().getX()) == screenX(line.getEnd().getX())
+         && screenY(line.getStart().getY()) == screenY(line.getEnd().getY()))
+        {
+            return;
+        }
+
+        graphics.setStroke(new BasicStroke());
+
+        if (isHighlighting && line == selectedLine) {
+            graphics.setColor (SELECTED_LINE_COLOR);
+            graphics.setStroke(new BasicStroke(1.5f));
+        }
+        else if (isHighlighting && taggedLines.contains(line)) {
+            graphics.setColor (TAGGED_LINE_COLOR);
+            graphics.setStroke(new BasicStroke(1.5f));
+        }
+        else if (isHighlighting && selectedSector != null && selectedSector.containsLine(line)) {
+            graphics.setColor (SELECTED_SECTOR_LINE_COLOR);
+            graphics.setStroke(new BasicStroke(1.5f));
+        }
+        else if ((line.getFlags() & Line.SECRET) != 0) {
+            graphics.setColor(SECRET_LINE_COLOR);
+        }
+        else if ((line.getFlags() & Line.TWO_SIDED) != 0) {
+            graphics.setColor(TWO_SIDED_LINE_COLOR);
+        }
+        else {
+            graphics.setColor(LINE_COLOR);
+        }
+
+        graphics.drawLine(screenX(line.getStart().getX()), screenY(line.getStart().getY()),
+                          screenX(line.getEnd  ().getX()), screenY(line.getEnd  ().getY()));
+    }
+
+    private void drawVertices(Graphics2D graphics, Rectangle area) {
+        if (scale > VERTEX_MAX_SCALE) {
+            return;
+        }
+
+        graphics.setColor(VERTEX_COLOR);
+
+        for (Vertex vertex: level.getVerticesIn(left(area), bottom(area), right(area), top(area))) {
+            if (!intersects(area, vertex.getX(), vertex.getY(), vertex.getX(), vertex.getY(), 2)) {
+                continue;
+            }
+
+            graphics.fillRect(screenX(vertex.getX()) - 1, screenY(vertex.getY()) - 1, 3, 3);
+        }
+    }
+
+    private void drawThings(Graphics2D graphics, Rectangle area) {
+        for (Thing thing: level.getThingsIn(left(area), bottom(area), right(area), top(area))) {
+            if (!intersects(area, thing.getLocation(), thing.getRadius())) {
+                continue;
+            }
+
+            if (thing.getRadius() / scale < THING_MIN_RADIUS) {
+                continue;
+            }
+
+            drawThing(graphics, thing, false);
+        }
+    }
+
+    private void drawThing(Graphics2D graphics, Thing thing, boolean isSelected) {
+        switch (thing.getKind()) {
+            case PLAYER:     graphics.setColor(PLAYER_THING_COLOR);     break;
+            case MONSTER:    graphics.setColor(MONSTER_THING_COLOR);    break;
+            case WEAPON:     graphics.setColor(WEAPON_THING_COLOR);     break;
+            case AMMO:       graphics.setColor(AMMO_THING_COLOR);       break;
+            case HEALTH:     graphics.setColor(HEALTH_THING_COLOR);     break;
+            case ARMOR:      graphics.setColor(ARMOR_THING_COLOR);      break;
+            case POWER_UP:   graphics.setColor(POWER_UP_THING_COLOR);   break;
+            case KEY:        graphics.setColor(KEY_THING_COLOR);        break;
+            case OBSTACLE:   graphics.setColor(OBSTACLE_THING_COLOR);   break;
+            case DECORATION: graphics.setColor(DECORATION_THING_COLOR); break;
+            case SPECIAL:    graphics.setColor(SPECIAL_THING_COLOR);    break;
+            case UNKNOWN:    graphics.setColor(UNKNOWN_THING_COLOR) ;   break;
+        }
+
+        int   screenRadius = thing.getRadius() / scale;
+        Shape circle       = new Ellipse2D.Double(screenX(thing.getLocation().getX()) - screenRadius,
+                                                  screenY(thing.getLocation().getY()) - screenRadius,
+                                                  screenRadius * 2, screenRadius * 2);
+
+        graphics.fill(circle);
+
+        if (isSelected) {
+            graphics.setColor (SELECTED_THING_COLOR);
+            graphics.setStroke(new BasicStroke(1.5f));
+        }
+        else {
+            graphics.setColor(THING_COLOR);
+        }
+
+        graphics.draw(circle);
+
+        if (thing.isDirectional()) {
+            double startX = thing.getLocation().getX();
+            double startY = thing.getLocation().getY();
+            double endX   = startX + thing.getRadius() * cos(thing.getAngle() * PI / 180);
+            double endY   = startY + thing.getRadius() * sin(thing.getAngle() * PI / 180);
+
+            graphics.drawLine(screenX((short) startX), screenY((short) startY),
+                              screenX((short) endX),   screenY((short) endY));
+        }
+
+        if (isSelected) {
+            graphics.setStroke(new BasicStroke());
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package name.kugelman.john.kdoom.model;
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import name.kugelman.john.kdoom.file.*;
+
+// The binary space partition compiled into a level by a node builder. NODES,
+// SSECTORS and SEGS are kept in flat primitive arrays indexed by node,
+// subsector and seg number.
+public class BspTree {
+    // Set on a child reference when it points to a subsector rather than a node.
+    public static final int SUBSECTOR = 0x8000;
+
+    public interface Visitor {
+        // Called for each subsector in traversal order. Return false to stop.
+        boolean visitSubsector(int subsector);
+    }
+
+
+    private List<Vertex> vertices;
+    private List<Line>   lines;
+    private List<Sector> sectors;
+
+    // SEGS
+    private int[]        segStarts, segEnds;
+    private short[]      segAngles;
+    private int[]        segLines;
+    private boolean[]    segIsLeft;
+    private short[]      segOffsets;
+
+    // SSECTORS
+    private int[]        subsectorFirstSegs;
+    private int[]        subsectorSegCounts;
+    private int[]        subsectorSectors;
+
+    // NODES
+    private short[]      nodeXs, nodeYs, nodeXDiffs, nodeYDiffs;
+    private short[]      nodeBounds;     // 8 per node: right top, bottom, left, right; left top, bottom, left, right
+    private int[]        nodeChildren;   // 2 per node: right (front), left (back)
+
+    BspTree(Level level, Lump segsLump, Lump subsectorsLump, Lump nodesLump) throws IOException {
+        this.vertices = level.vertices();
+        this.lines    = level.lines   ();
+        this.sectors  = level.sectors ();
+
+        readSegs      (segsLump);
+        readSubsectors(subsectorsLump);
+        readNodes     (nodesLump);
+    }
+
+    private void readSegs(Lump lump) throws IOException {
+        ShortBuffer buffer = lump.getData().asShortBuffer();
+        int         count  = buffer.remaining() / 6;
+
+        segStarts  = new int    [count];
+        segEnds    = new int    [count];
+        segAngles  = new short  [count];
+        segLines   = new int    [count];
+        segIsLeft  = new boolean[count];
+        segOffsets = new short  [count];
+
+        for (int i = 0; i < count; ++i) {
+            segStarts [i] = buffer.get() & 0xFFFF;
+            segEnds   [i] = buffer.get() & 0xFFFF;
+            segAngles [i] = buffer.get();
+            segLines  [i] = buffer.get() & 0xFFFF;
+            segIsLeft [i] = buffer.get() != 0;
+            segOffsets[i] = buffer.get();
+
+            if (segStarts[i] >= vertices.size() || segEnds[i] >= vertices.size()
+             || segLines [i] >= lines.size())
+            {
+                throw new IOException("SEG " + i + " has reference to non-existent VERTEX or LINEDEF.");
+            }
+        }
+    }
+
+    private void readSubsectors(Lump lump) throws IOException {
+        ShortBuffer buffer = lump.getData().asShortBuffer();
+        int         count  = buffer.remaining() / 2;
+
+        subsectorFirstSegs = new int[count];
+        subsectorSegCounts = new int[count];
+        subsectorSectors   = new int[count];
+
+        for (int i = 0; i < count; ++i) {
+            subsectorSegCounts[i] = buffer.get() & 0xFFFF;
+            subsectorFirstSegs[i] = buffer.get() & 0xFFFF;
+            subsectorSectors  [i] = -1;
+
+            if (subsectorFirstSegs[i] + subsectorSegCounts[i] > segLines.length) {
+                throw new IOException("SSECTOR " + i + " has reference to non-existent SEG.");
+            }
+
+            // The sector is the one on the facing side of the first seg's line.
+            if (subsectorSegCounts[i] > 0) {
+                int  seg  = subsectorFirstSegs[i];
+                Line line = lines.get(segLines[seg]);
+                Side side = segIsLeft[seg] ? line.getLeftSide() : line.getRightSide();
+
+                if (side != null) {
+                    subsectorSectors[i] = side.getSector().getNumber();
+                }
+            }
+        }
+    }
+
+    private void readNodes(Lump lump) throws IOException {
+        ShortBuffer buffer = lump.getData().asShortBuffer();
+        int         count  = buffer.remaining() / 14;
+
+        nodeXs       = new short[count];
+        nodeYs       = new short[count];
+        nodeXDiffs   = new short[count];
+        nodeYDiffs   = new short[count];
+        nodeBounds   = new short[count * 8];
+        nodeChildren = new int  [count * 2];
+
+        for (int i = 0; i < count; ++i) {
+            nodeXs    [i] = buffer.get();
+            nodeYs    [i] = buffer.get();
+            nodeXDiffs[i] = buffer.get();
+            nodeYDiffs[i] = buffer.get();
+
+            buffer.get(nodeBounds, i * 8, 8);
+
+            for (int side = 0; side < 2; ++side) {
+                int child = buffer.get() & 0xFFFF;
+
+                if ((child & SUBSECTOR) != 0 ? (child & ~SUBSECTOR) >= subsectorSegCounts.length
+                                             : child >= count)
+                {
+                    throw new IOException("NODE " + i + " has reference to non-existent child " + child + ".");
+                }
+
+                nodeChildren[i * 2 + side] = child;
+            }
+        }
+    }
+
+
+    public int getNodeCount() {
+        return nodeXs.length;
+    }
+
+    public int getSubsectorCount() {
+        return subsectorSegCounts.length;
+    }
+
+    public int getSegCount() {
+        return segLines.length;
+    }
+
+    // A level with a single subsector has no nodes, in which case the root is
+    // that subsector.
+    public int getRoot() {
+        return nodeXs.length == 0 ? SUBSECTOR : nodeXs.length - 1;
+    }
+
+
+    // Nodes
+
+    public short getNodeX     (int node) { return nodeXs    [node]; }
+    public short getNodeY     (int node) { return nodeYs    [node]; }
+    public short getNodeXDiff (int node) { return nodeXDiffs[node]; }
+    public short getNodeYDiff (int node) { return nodeYDiffs[node]; }
+
+    // Side 0 is the right (front) child, side 1 the left (back) child.
+    public int getNodeChild(int node, int side) {
+        return nodeChildren[node * 2 + side];
+    }
+
+    // Edges 0-3 are the top, bottom, left and right of the child's bounding box.
+    public short getNodeBound(int node, int side, int edge) {
+        return nodeBounds[node * 8 + side * 4 + edge];
+    }
+
+    // Returns 0 if the point is on the right (front) side of the partition line,
+    // 1 if on the left (back). Points on the line count as back, as in Doom.
+    public int sideOf(int node, int x, int y) {
+        return Line.orientation(nodeXs[node], nodeYs[node], nodeXDiffs[node], nodeYDiffs[node], x, y) < 0 ? 0 : 1;
+    }
+
+
+    // Subsectors
+
+    public int getFirstSeg(int subsector) {
+        return subsectorFirstSegs[subsector];
+    }
+
+    public int getSubsectorSegCount(int subsector) {
+        return subsectorSegCounts[subsector];
+    }
+
+    public Sector getSector(int subsector) {
+        int sector = subsectorSectors[subsector];
+
+        return sector < 0 ? null : sectors.get(sector);
+    }
+
+
+    // Segs
+
+    public Vertex getSegStart(int seg) {
+        return vertices.get(segStarts[seg]);
+    }
+
+    public Vertex getSegEnd(int seg) {
+        return vertices.get(segEnds[seg]);
+    }
+
+    public short getSegAngle(int seg) {
+        return segAngles[seg];
+    }
+
+    public Line getSegLine(int seg) {
+        return lines.get(segLines[seg]);
+    }
+
+    public Side getSegSide(int seg) {
+        Line line = getSegLine(seg);
+
+        return segIsLeft[seg] ? line.getLeftSide() : line.getRightSide();
+    }
+
+    public short getSegOffset(int seg) {
+        return segOffsets[seg];
+    }
+
+
+    // Queries
+
+    public int subsectorAt(int x, int y) {
+        int child = getRoot();
+
+        while ((child & SUBSECTOR) == 0) {
+            child = nodeChildren[child * 2 + sideOf(child, x, y)];
+        }
+
+        return child & ~SUBSECTOR;
+    }
+
+    public int subsectorAt(Location location) {
+        return subsectorAt(location.getX(), location.getY());
+    }
+
+    public Sector sectorAt(Location location) {
+        return getSector(subsectorAt(location));
+    }
+
+    // Visits every subsector in front-to-back order as seen from the viewpoint.
+    public void traverse(Location viewpoint, Visitor visitor) {
+        traverse(getRoot(), viewpoint.getX(), viewpoint.getY(), visitor);
+    }
+
+    private boolean traverse(int child, int x, int y, Visitor visitor) {
+        if ((child & SUBSECTOR) != 0) {
+            return visitor.visitSubsector(child & ~SUBSECTOR);
+        }
+
+        int side = sideOf(child, x, y);
+
+        return traverse(nodeChildren[child * 2 + side],     x, y, visitor)
+            && traverse(nodeChildren[child * 2 + (side ^ 1)], x, y, visitor);
+    }
+}
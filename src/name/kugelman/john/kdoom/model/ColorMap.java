@@ -0,0 +1,54 @@
+package name.kugelman.john.kdoom.model;
+
+import java.io.*;
+import java.nio.*;
+
+import name.kugelman.john.kdoom.file.*;
+
+import static java.lang.Math.*;
+
+// The COLORMAP lump: tables remapping each palette index to a darker one. Maps
+// 0 to 31 go from full brightness to nearly black, map 32 is the
+// invulnerability effect and map 33 is all black.
+public class ColorMap {
+    public static final int LIGHT_LEVELS    = 32;
+    public static final int INVULNERABILITY = 32;
+
+    byte[][] maps;
+
+    ColorMap() throws IOException {
+        Lump lump = Resources.getWad().lump("COLORMAP");
+
+        if (lump.getSize() < LIGHT_LEVELS * Palette.COLORS) {
+            throw new IOException("COLORMAP smaller than " + LIGHT_LEVELS * Palette.COLORS + " bytes.");
+        }
+
+        this.maps = new byte[lump.getSize() / Palette.COLORS][Palette.COLORS];
+
+        ByteBuffer buffer = lump.getData();
+
+        for (byte[] map: maps) {
+            buffer.get(map);
+        }
+    }
+
+    // The map the engine uses for a sector's light level, up close.
+    public static int forLightLevel(int lightLevel) {
+        return LIGHT_LEVELS - 1 - (min(max(lightLevel, 0), 255) >> 3);
+    }
+
+
+    // Remaps every pixel of the image through a map, keeping its transparency.
+    public IndexedImage apply(IndexedImage image, int map) {
+        byte[]       remap   = maps[map];
+        IndexedImage applied = new IndexedImage(image.getWidth(), image.getHeight());
+
+        for (int pixel = 0; pixel < image.indices.length; ++pixel) {
+            applied.indices[pixel] = remap[image.indices[pixel] & 0xFF];
+        }
+
+        System.arraycopy(image.mask, 0, applied.mask, 0, image.mask.length);
+
+        return applied;
+    }
+}
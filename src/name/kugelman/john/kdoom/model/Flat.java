@@ -13,7 +13,8 @@ public class Flat {
     public static final int HEIGHT = 64;
     public static final int SIZE   = WIDTH * HEIGHT;
 
-    private Lump lump;
+    private Lump         lump;
+    private IndexedImage indexedImage;
 
     Flat(Lump lump) throws IOException {
         if (lump.getSize() != SIZE) {
@@ -33,19 +34,25 @@ public class Flat {
     }
 
 
+    // The image shares its pixels with the indexed image, so switching palettes
+    // only swaps the colour model. Do not draw on it.
     public BufferedImage getImage() throws IOException {
-        IndexColorModel colorModel = Resources.getPalette().getColorModel();
-        BufferedImage   image      = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        return getImage(Resources.getPalette().getActivePalette());
+    }
 
-        // Read flat pixels.
-        ByteBuffer buffer     = lump.getData();
-        byte[]     pixels     = new byte[SIZE];
+    public BufferedImage getImage(int palette) throws IOException {
+        return getIndexedImage().toOpaqueImage(Resources.getPalette().getColorModel(palette));
+    }
 
-        buffer.get(pixels);
+    // Flats have no transparency, so every pixel is opaque.
+    public synchronized IndexedImage getIndexedImage() throws IOException {
+        if (indexedImage == null) {
+            indexedImage = new IndexedImage(WIDTH, HEIGHT);
 
-        // Copy to image.
-        image.getRaster().setDataElements(0, 0, WIDTH, HEIGHT, pixels);
+            lump.getData().get(indexedImage.indices);
+            indexedImage.setAllOpaque();
+        }
 
-        return image;
+        return indexedImage;
     }
 }
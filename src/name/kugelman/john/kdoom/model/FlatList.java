@@ -33,6 +33,16 @@ public class FlatList extends AbstractMap<String, Flat> implements SortedMap<Str
         return flats.entrySet();
     }
 
+    @Override
+    public Flat get(Object key) {
+        return flats.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return flats.containsKey(key);
+    }
+
 
     // Implementation of SortedMap
 
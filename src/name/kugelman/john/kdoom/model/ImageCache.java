@@ -0,0 +1,111 @@
+package name.kugelman.john.kdoom.model;
+
+import java.awt.image.*;
+import java.util.*;
+
+// Decoded images shared by everything that draws patches and textures, keyed
+// by the object decoded and the palette it was decoded with. Once the pixel
+// data held exceeds the capacity, the least recently used images are evicted.
+//
+// Cached images are shared, so callers must not draw on them.
+public class ImageCache {
+    public static final long DEFAULT_CAPACITY = 64L << 20;
+
+    private static final ImageCache shared = new ImageCache(DEFAULT_CAPACITY);
+
+    private static class Key {
+        private Object source;
+        private int    palette;
+
+        Key(Object source, int palette) {
+            this.source  = source;
+            this.palette = palette;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+
+            Key that = (Key) object;
+
+            return this.source == that.source && this.palette == that.palette;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(source) * 31 + palette;
+        }
+    }
+
+
+    private LinkedHashMap<Key, BufferedImage> images;
+    private long                              capacity;
+    private long                              size;
+
+    public ImageCache(long capacity) {
+        this.images   = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+        this.capacity = capacity;
+    }
+
+    public static ImageCache getShared() {
+        return shared;
+    }
+
+
+    public synchronized BufferedImage get(Object source, int palette) {
+        return images.get(new Key(source, palette));
+    }
+
+    public synchronized void put(Object source, int palette, BufferedImage image) {
+        BufferedImage previous = images.put(new Key(source, palette), image);
+
+        if (previous != null) {
+            size -= bytesOf(previous);
+        }
+
+        size += bytesOf(image);
+
+        evict();
+    }
+
+    public synchronized void clear() {
+        images.clear();
+        size = 0;
+    }
+
+
+    // Bytes of pixel data held.
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+
+        evict();
+    }
+
+    public synchronized int getImageCount() {
+        return images.size();
+    }
+
+
+    private void evict() {
+        Iterator<BufferedImage> iterator = images.values().iterator();
+
+        while (size > capacity && iterator.hasNext()) {
+            size -= bytesOf(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    private static long bytesOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8;
+    }
+}
@@ -0,0 +1,147 @@
+package name.kugelman.john.kdoom.model;
+
+import java.awt.image.*;
+import java.util.*;
+
+import static java.lang.Math.*;
+
+// An 8-bit image of palette indices with a one-bit transparency mask, as Doom
+// graphics are stored. Every palette index is a real colour, so transparency
+// cannot be an index of its own. Pixels are stored row by row.
+public class IndexedImage {
+    private int    width, height;
+
+    // Package access so decoders and converters can loop over them directly.
+    byte[]         indices;
+    long[]         mask;
+
+    IndexedImage(int width, int height) {
+        this.width   = width;
+        this.height  = height;
+        this.indices = new byte[width * height];
+        this.mask    = new long[(width * height + 63) / 64];
+    }
+
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getIndex(int x, int y) {
+        return indices[y * width + x] & 0xFF;
+    }
+
+    public boolean isOpaque(int x, int y) {
+        return isOpaque(y * width + x);
+    }
+
+    boolean isOpaque(int pixel) {
+        return (mask[pixel >>> 6] & (1L << pixel)) != 0;
+    }
+
+    void setOpaque(int pixel) {
+        mask[pixel >>> 6] |= 1L << pixel;
+    }
+
+    void setAllOpaque() {
+        Arrays.fill(mask, -1L);
+
+        if (width * height % 64 != 0) {
+            mask[mask.length - 1] = (1L << width * height % 64) - 1;
+        }
+    }
+
+
+    // Draws the opaque pixels onto an ARGB pixel array of the given width,
+    // column by column, with the top left corner at (left, top), optionally
+    // flipped left to right.
+    public void drawOnto(int[] pixels, int pixelsWidth, int left, int top, boolean isMirrored, int[] colors) {
+        for (int x = 0; x < width; ++x) {
+            int column = left + (isMirrored ? width - 1 - x : x);
+
+            for (int y = 0, pixel = x, target = top * pixelsWidth + column; y < height;
+                 ++y, pixel += width, target += pixelsWidth)
+            {
+                if (isOpaque(pixel)) {
+                    pixels[target] = colors[indices[pixel] & 0xFF];
+                }
+            }
+        }
+    }
+
+    // Copies the opaque pixels onto another indexed image with the top left
+    // corner at (left, top), clipped to its bounds.
+    void drawOnto(IndexedImage target, int left, int top) {
+        int startX = max(0, -left), endX = min(width,  target.width  - left);
+        int startY = max(0, -top),  endY = min(height, target.height - top);
+
+        for (int y = startY; y < endY; ++y) {
+            for (int x = startX, pixel = y * width + x, targetPixel = (top + y) * target.width + left + x; x < endX;
+                 ++x, ++pixel, ++targetPixel)
+            {
+                if (isOpaque(pixel)) {
+                    target.indices[targetPixel] = indices[pixel];
+                    target.setOpaque(targetPixel);
+                }
+            }
+        }
+    }
+
+    static int[] colorsOf(IndexColorModel colorModel) {
+        int[] colors = new int[colorModel.getMapSize()];
+
+        colorModel.getRGBs(colors);
+
+        return colors;
+    }
+
+
+    // An 8-bit image sharing this image's indices, ignoring transparency. No
+    // pixels are converted, so it is the cheapest way to show opaque graphics.
+    public BufferedImage toOpaqueImage(IndexColorModel colorModel) {
+        DataBuffer     dataBuffer = new DataBufferByte(indices, indices.length);
+        WritableRaster raster     = Raster.createInterleavedRaster(dataBuffer, width, height, width, 1,
+                                                                   new int[] { 0 }, null);
+
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    public BufferedImage toImage() {
+        return toImage(Resources.getPalette().getColorModel());
+    }
+
+    public BufferedImage toImage(IndexColorModel colorModel) {
+        return toImage(colorsOf(colorModel));
+    }
+
+    // Converts to ARGB through a table of 256 ARGB colours, with masked pixels
+    // fully transparent. This is one lookup per pixel, so switching palettes or
+    // light levels only needs a different table.
+    public BufferedImage toImage(int[] colors) {
+        int[] pixels = new int[width * height];
+
+        // Whole mask words at a time, skipping runs of transparency.
+        for (int word = 0; word < mask.length; ++word) {
+            long bits = mask[word];
+
+            while (bits != 0) {
+                int pixel = word * 64 + Long.numberOfTrailingZeros(bits);
+
+                pixels[pixel] = colors[indices[pixel] & 0xFF];
+                bits         &= bits - 1;
+            }
+        }
+
+        // One bulk copy into the raster. Taking the DataBufferInt's array
+        // instead would stop Java2D from caching the image for drawing.
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+        image.getRaster().setDataElements(0, 0, width, height, pixels);
+
+        return image;
+    }
+}
@@ -6,7 +6,15 @@ import java.util.*;
 
 import name.kugelman.john.kdoom.file.*;
 
+import static java.lang.Math.*;
+
 public class Level {
+    // Worst-case float error of LineGeometry distances, in map units, with margin.
+    private static final double DISTANCE_TOLERANCE = 0.5;
+
+    // Cell size of the spatial grids, in map units; the engine's blockmap uses 128.
+    private static final int    GRID_CELL_SIZE     = 128;
+
     private String        name;
 
     private List<Thing>   things;
@@ -20,6 +28,18 @@ public class Level {
     private Map<Short, List<Line>>   linesByTag;
     private Map<Short, List<Sector>> sectorsByTag;
 
+    private LineGeometry  lineGeometry;
+    private float[]       squaredDistances;
+    private SectorGraph   sectorGraph;
+    private BspTree       nodes;
+    private LineOfSight   lineOfSight;
+
+    // Built on first use, as sector bounds are only known once geometry is.
+    private SpatialGrid<Sector> sectorGrid;
+    private SpatialGrid<Line>   lineGrid;
+    private SpatialGrid<Vertex> vertexGrid;
+    private SpatialGrid<Thing>  thingGrid;
+
     Level(Lump nameLump)
         throws IllegalArgumentException, IOException
     {
@@ -38,9 +58,17 @@ public class Level {
         readSectors (levelLumps.get(8));
         readSides   (levelLumps.get(3));
         readLines   (levelLumps.get(2));
+        readNodes   (levelLumps.get(5), levelLumps.get(6), levelLumps.get(7));
+
+        lineGeometry     = new LineGeometry(lines);
+        squaredDistances = new float[lines.size()];
+        sectorGraph      = new SectorGraph(this);
+        lineOfSight      = new LineOfSight(this, levelLumps.get(9));
+
+        RegionTracer tracer = new RegionTracer(vertices, lines);
 
         for (Sector sector: sectors) {
-            sector.updateGeometry();
+            sector.updateGeometry(tracer);
         }
     }
 
@@ -209,6 +237,20 @@ public class Level {
     }
 
 
+    private void readNodes(Lump segsLump, Lump subsectorsLump, Lump nodesLump) throws IOException {
+        // Levels that have not been run through a node builder have no BSP tree.
+        if (!segsLump      .getName().equals("SEGS")     || segsLump      .getSize() == 0
+         || !subsectorsLump.getName().equals("SSECTORS") || subsectorsLump.getSize() == 0
+         || !nodesLump     .getName().equals("NODES"))
+        {
+            nodes = null;
+            return;
+        }
+
+        nodes = new BspTree(this, segsLump, subsectorsLump, nodesLump);
+    }
+
+
     public String getName() {
         return name;
     }
@@ -233,6 +275,18 @@ public class Level {
         return Collections.unmodifiableList(sectors);
     }
 
+    public SectorGraph getSectorGraph() {
+        return sectorGraph;
+    }
+
+    public boolean hasNodes() {
+        return nodes != null;
+    }
+
+    public BspTree getNodes() {
+        return nodes;
+    }
+
 
     public Collection<Sector> taggedSectors(Line line) {
         if (line == null) {
@@ -279,35 +333,162 @@ public class Level {
     }
 
 
+    public LineGeometry getLineGeometry() {
+        return lineGeometry;
+    }
+
+
     public short getMinX() { return minX; }
     public short getMinY() { return minY; }
     public short getMaxX() { return maxX; }
     public short getMaxY() { return maxY; }
 
 
+    // Everything whose bounding box meets a rectangle of the map, in level
+    // order. Things' boxes take in their radius.
+
+    public List<Sector> getSectorsIn(int minX, int minY, int maxX, int maxY) {
+        return getSectorGrid().query(minX, minY, maxX, maxY);
+    }
+
+    public List<Line> getLinesIn(int minX, int minY, int maxX, int maxY) {
+        return getLineGrid().query(minX, minY, maxX, maxY);
+    }
+
+    public List<Vertex> getVerticesIn(int minX, int minY, int maxX, int maxY) {
+        return getVertexGrid().query(minX, minY, maxX, maxY);
+    }
+
+    public List<Thing> getThingsIn(int minX, int minY, int maxX, int maxY) {
+        return getThingGrid().query(minX, minY, maxX, maxY);
+    }
+
+    private synchronized SpatialGrid<Sector> getSectorGrid() {
+        if (sectorGrid == null) {
+            int   count = sectors.size();
+            int[] minXs = new int[count], minYs = new int[count], maxXs = new int[count], maxYs = new int[count];
+
+            for (int i = 0; i < count; ++i) {
+                Sector sector = sectors.get(i);
+
+                minXs[i] = sector.getMinX();
+                minYs[i] = sector.getMinY();
+                maxXs[i] = sector.getMaxX();
+                maxYs[i] = sector.getMaxY();
+            }
+
+            sectorGrid = new SpatialGrid<Sector>(sectors, minXs, minYs, maxXs, maxYs, GRID_CELL_SIZE);
+        }
+
+        return sectorGrid;
+    }
+
+    private synchronized SpatialGrid<Line> getLineGrid() {
+        if (lineGrid == null) {
+            int   count = lines.size();
+            int[] minXs = new int[count], minYs = new int[count], maxXs = new int[count], maxYs = new int[count];
+
+            for (int i = 0; i < count; ++i) {
+                Line line = lines.get(i);
+
+                minXs[i] = min(line.getStart().getX(), line.getEnd().getX());
+                minYs[i] = min(line.getStart().getY(), line.getEnd().getY());
+                maxXs[i] = max(line.getStart().getX(), line.getEnd().getX());
+                maxYs[i] = max(line.getStart().getY(), line.getEnd().getY());
+            }
+
+            lineGrid = new SpatialGrid<Line>(lines, minXs, minYs, maxXs, maxYs, GRID_CELL_SIZE);
+        }
+
+        return lineGrid;
+    }
+
+    private synchronized SpatialGrid<Vertex> getVertexGrid() {
+        if (vertexGrid == null) {
+            int   count = vertices.size();
+            int[] xs    = new int[count], ys = new int[count];
+
+            for (int i = 0; i < count; ++i) {
+                xs[i] = vertices.get(i).getX();
+                ys[i] = vertices.get(i).getY();
+            }
+
+            vertexGrid = new SpatialGrid<Vertex>(vertices, xs, ys, xs, ys, GRID_CELL_SIZE);
+        }
+
+        return vertexGrid;
+    }
+
+    private synchronized SpatialGrid<Thing> getThingGrid() {
+        if (thingGrid == null) {
+            int   count = things.size();
+            int[] minXs = new int[count], minYs = new int[count], maxXs = new int[count], maxYs = new int[count];
+
+            for (int i = 0; i < count; ++i) {
+                Location location = things.get(i).getLocation();
+                int      radius   = things.get(i).getRadius();
+
+                minXs[i] = location.getX() - radius;
+                minYs[i] = location.getY() - radius;
+                maxXs[i] = location.getX() + radius;
+                maxYs[i] = location.getY() + radius;
+            }
+
+            thingGrid = new SpatialGrid<Thing>(things, minXs, minYs, maxXs, maxYs, GRID_CELL_SIZE);
+        }
+
+        return thingGrid;
+    }
+
+
     public Collection<Line> getLinesClosestTo(Location location) {
         return getLinesClosestTo(location, Double.POSITIVE_INFINITY);
     }
 
-    public Collection<Line> getLinesClosestTo(Location location, double maximumDistance) {
+    // Synchronized as every query shares one buffer of distances, rather than
+    // allocating one per mouse move.
+    public synchronized Collection<Line> getLinesClosestTo(Location location, double maximumDistance) {
         List<Line> closestLines    = new ArrayList<Line>();
         double     closestDistance = maximumDistance;
 
-        if (location != null) {
-            for (Line line: lines) {
-                double distance = line.distanceTo(location);
+        if (location == null || lines.isEmpty()) {
+            return closestLines;
+        }
 
-                if (distance > closestDistance) {
-                    continue;
-                }
+        // Find the nearest lines approximately with the packed kernel, then
+        // compare the few within rounding error of the nearest exactly.
+        float nearest = Float.POSITIVE_INFINITY;
 
-                if (distance < closestDistance) {
-                    closestLines.clear();
-                    closestDistance = distance;
-                }
+        lineGeometry.squaredDistancesTo(location.getX(), location.getY(), squaredDistances);
+
+        for (float squaredDistance: squaredDistances) {
+            nearest = min(nearest, squaredDistance);
+        }
 
-                closestLines.add(line);
+        if (sqrt(nearest) - DISTANCE_TOLERANCE > maximumDistance) {
+            return closestLines;
+        }
+
+        double cutoff = pow(sqrt(nearest) + DISTANCE_TOLERANCE, 2);
+
+        for (int i = 0; i < squaredDistances.length; ++i) {
+            if (squaredDistances[i] > cutoff) {
+                continue;
             }
+
+            Line   line     = lines.get(i);
+            double distance = line.distanceTo(location);
+
+            if (distance > closestDistance) {
+                continue;
+            }
+
+            if (distance < closestDistance) {
+                closestLines.clear();
+                closestDistance = distance;
+            }
+
+            closestLines.add(line);
         }
 
         return closestLines;
@@ -316,10 +497,36 @@ public class Level {
     public Collection<Sector> getSectorsContaining(Location location) {
         Collection<Sector> sectors = new ArrayList<Sector>();
 
-        for (Line line: getLinesClosestTo(location)) {
+        if (location == null) {
+            return sectors;
+        }
+
+        // Only sectors whose bounds hold the location can contain it. The
+        // nearest of their lines limits how far off the nearest line can be,
+        // so the exact search need only look at lines within that distance.
+        int    x        = location.getX(), y = location.getY();
+        double distance = Double.POSITIVE_INFINITY;
+
+        for (Sector sector: getSectorsIn(x, y, x, y)) {
+            for (Side side: sector.sides()) {
+                distance = min(distance, side.getLine().distanceTo(location));
+            }
+        }
+
+        if (distance == Double.POSITIVE_INFINITY) {
+            return sectors;
+        }
+
+        int reach = (int) ceil(distance);
+
+        for (Line line: getLinesClosestTo(location, getLinesIn(x - reach, y - reach, x + reach, y + reach))) {
             Side facingSide = line.sideFacing(location);
 
-            if (facingSide != null && facingSide.getSector() != null) {
+            // The nearest line can face a sector from outside its bounds, e.g.
+            // from the void around the level.
+            if (facingSide != null && facingSide.getSector() != null
+             && facingSide.getSector().boundsContain(location))
+            {
                 sectors.add(facingSide.getSector());
             }
         }
@@ -327,11 +534,51 @@ public class Level {
         return sectors;
     }
 
+    private static List<Line> getLinesClosestTo(Location location, Collection<Line> lines) {
+        List<Line> closestLines    = new ArrayList<Line>();
+        double     closestDistance = Double.POSITIVE_INFINITY;
+
+        for (Line line: lines) {
+            double distance = line.distanceTo(location);
+
+            if (distance > closestDistance) {
+                continue;
+            }
+
+            if (distance < closestDistance) {
+                closestLines.clear();
+                closestDistance = distance;
+            }
+
+            closestLines.add(line);
+        }
+
+        return closestLines;
+    }
+
+    public boolean canSee(Location from, Location to) {
+        return lineOfSight.canSee(from, to);
+    }
+
+    public boolean[] canSee(Location[] from, Location[] to) {
+        return lineOfSight.canSee(from, to);
+    }
+
+    public Sector getSectorAt(Location location) {
+        if (nodes != null) {
+            return nodes.sectorAt(location);
+        }
+
+        Collection<Sector> sectors = getSectorsContaining(location);
+
+        return sectors.isEmpty() ? null : sectors.iterator().next();
+    }
+
     public Collection<Thing> getThingsAt(Location location) {
         List<Thing> things = new ArrayList<Thing>();
 
         if (location != null) {
-            for (Thing thing: this.things) {
+            for (Thing thing: getThingsIn(location.getX(), location.getY(), location.getX(), location.getY())) {
                 if (location.distanceTo(thing.getLocation()) <= thing.getRadius()) {
                     things.add(thing);
                 }
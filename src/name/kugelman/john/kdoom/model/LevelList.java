@@ -24,6 +24,16 @@ public class LevelList extends AbstractMap<String, Level> implements SortedMap<S
         return levels.entrySet();
     }
 
+    @Override
+    public Level get(Object key) {
+        return levels.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return levels.containsKey(key);
+    }
+
 
     // Implementation of SortedMap
 
@@ -22,8 +22,6 @@ public class Line {
     private Side    rightSide, leftSide;
 
     private double  xDiff, yDiff;
-    private double  slope;
-    private int     leftSign;
 
     Line(short number, Vertex start, Vertex end, short flags, short specialType, short tagNumber,
          Sidedef rightSidedef, Sidedef leftSidedef)
@@ -39,8 +37,6 @@ public class Line {
 
         this.xDiff         = end.getX() - start.getX();
         this.yDiff         = end.getY() - start.getY();
-        this.slope         = yDiff / xDiff;
-        this.leftSign      = end.getX() < start.getX() ? -1 : +1;
     }
 
 
@@ -110,16 +106,27 @@ public class Line {
     }
 
     public Side sideFacing(Location location) {
-        // See http://mathforum.org/library/drmath/view/54823.html
-        int sign = (int) signum((location.getY() - start.getY())
-                      - slope * (location.getX() - start.getX()));
+        long orientation = orientation(location);
 
         // Vertex is on line, neither side is facing.
-        if (sign == 0) {
+        if (orientation == 0) {
             return null;
         }
 
-        return sign == leftSign ? leftSide : rightSide;
+        return orientation > 0 ? leftSide : rightSide;
+    }
+
+    // Positive if the location is left of the line looking from start to end,
+    // negative if right, zero if on the line.
+    public long orientation(Location location) {
+        return orientation(start.getX(), start.getY(), end.getX() - start.getX(), end.getY() - start.getY(),
+                           location.getX(), location.getY());
+    }
+
+    // Same for the line through (x, y) with the given deltas. This is an exact
+    // integer cross product: map coordinates are shorts, so it cannot overflow.
+    public static long orientation(int x, int y, int xDiff, int yDiff, int pointX, int pointY) {
+        return (long) xDiff * (pointY - y) - (long) yDiff * (pointX - x);
     }
 
 
@@ -0,0 +1,84 @@
+package name.kugelman.john.kdoom.model;
+
+import java.util.*;
+
+import static java.lang.Math.*;
+
+// Every line of a level packed into parallel float arrays, indexed by line
+// number, for batch distance queries. Map coordinates are shorts, so endpoints
+// and deltas are exact as floats.
+//
+// The distance kernel is one straight loop over the arrays with no branches or
+// calls other than min and max, which is the shape HotSpot's superword pass
+// turns into SIMD code. Zero-length lines have an inverse squared length of 0,
+// which makes the kernel measure from their start without a special case.
+public class LineGeometry {
+    private float[] startXs, startYs;
+    private float[] xDiffs,  yDiffs;
+    private float[] inverseSquaredLengths;
+
+    LineGeometry(List<Line> lines) {
+        int count = lines.size();
+
+        startXs               = new float[count];
+        startYs               = new float[count];
+        xDiffs                = new float[count];
+        yDiffs                = new float[count];
+        inverseSquaredLengths = new float[count];
+
+        for (int i = 0; i < count; ++i) {
+            Line  line          = lines.get(i);
+            float xDiff         = line.getEnd().getX() - line.getStart().getX();
+            float yDiff         = line.getEnd().getY() - line.getStart().getY();
+            float squaredLength = xDiff * xDiff + yDiff * yDiff;
+
+            startXs              [i] = line.getStart().getX();
+            startYs              [i] = line.getStart().getY();
+            xDiffs               [i] = xDiff;
+            yDiffs               [i] = yDiff;
+            inverseSquaredLengths[i] = squaredLength == 0 ? 0 : 1 / squaredLength;
+        }
+    }
+
+
+    public int getLineCount() {
+        return startXs.length;
+    }
+
+    // Fills squaredDistances, which must hold getLineCount() floats, with the
+    // squared distance from the point to each line segment.
+    public void squaredDistancesTo(float x, float y, float[] squaredDistances) {
+        float[] startXs               = this.startXs;
+        float[] startYs               = this.startYs;
+        float[] xDiffs                = this.xDiffs;
+        float[] yDiffs                = this.yDiffs;
+        float[] inverseSquaredLengths = this.inverseSquaredLengths;
+
+        for (int i = 0; i < startXs.length; ++i) {
+            float toX = x - startXs[i];
+            float toY = y - startYs[i];
+
+            // Fraction of the way along the line to the nearest point on it.
+            float r   = (toX * xDiffs[i] + toY * yDiffs[i]) * inverseSquaredLengths[i];
+
+            r = min(max(r, 0f), 1f);
+
+            float offX = toX - r * xDiffs[i];
+            float offY = toY - r * yDiffs[i];
+
+            squaredDistances[i] = offX * offX + offY * offY;
+        }
+    }
+
+    public float[] distancesTo(Location location) {
+        float[] distances = new float[getLineCount()];
+
+        squaredDistancesTo(location.getX(), location.getY(), distances);
+
+        for (int i = 0; i < distances.length; ++i) {
+            distances[i] = (float) sqrt(distances[i]);
+        }
+
+        return distances;
+    }
+}
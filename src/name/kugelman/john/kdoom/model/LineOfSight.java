@@ -0,0 +1,232 @@
+package name.kugelman.john.kdoom.model;
+
+import java.io.*;
+import java.util.*;
+
+import name.kugelman.john.kdoom.file.*;
+
+import static java.lang.Math.*;
+
+// Sight checks in the manner of Doom's P_CheckSight: the REJECT table rules out
+// sector pairs that can never see each other, then the trace is walked through
+// the BSP tree front to back, stopping at the first one-sided line or closed
+// opening. The slopes of the sight cone are narrowed at every height change.
+//
+// Instances are immutable and all state is private to each query, so one
+// LineOfSight can be shared by any number of threads.
+public class LineOfSight {
+    // Height of the target above its floor, and of the viewer's eyes: three
+    // quarters of the way up, as sightzstart is in P_CheckSight.
+    public static final int TARGET_HEIGHT = 56;
+    public static final int VIEW_HEIGHT   = TARGET_HEIGHT - (TARGET_HEIGHT >> 2);
+
+    private static class Trace {
+        int    x, y, xDiff, yDiff;
+        double z;
+        double topSlope, bottomSlope;
+    }
+
+
+    private Level        level;
+    private BspTree      nodes;
+    private List<Line>   lines;
+    private int          sectorCount;
+    private byte[]       reject;
+
+    LineOfSight(Level level, Lump rejectLump) throws IOException {
+        this.level       = level;
+        this.nodes       = level.getNodes();
+        this.lines       = level.lines();
+        this.sectorCount = level.sectors().size();
+        this.reject      = null;
+
+        // The REJECT table is optional, and often left empty or truncated by editors.
+        if (rejectLump.getName().equals("REJECT")
+         && rejectLump.getSize() >= ((long) sectorCount * sectorCount + 7) / 8)
+        {
+            this.reject = new byte[rejectLump.getSize()];
+            rejectLump.getData().get(reject);
+        }
+    }
+
+
+    public boolean canSee(Location from, Location to) {
+        return canSee(from, to, new Trace());
+    }
+
+    // A batch shares one trace, as every query sets it up afresh.
+    public boolean[] canSee(Location[] from, Location[] to) {
+        if (from.length != to.length) {
+            throw new IllegalArgumentException("Expected as many viewers as targets.");
+        }
+
+        boolean[] results = new boolean[from.length];
+        Trace     trace   = new Trace();
+
+        for (int i = 0; i < results.length; ++i) {
+            results[i] = canSee(from[i], to[i], trace);
+        }
+
+        return results;
+    }
+
+    private boolean canSee(Location from, Location to, Trace trace) {
+        if (from == null || to == null) {
+            return false;
+        }
+
+        Sector fromSector = level.getSectorAt(from);
+        Sector toSector   = level.getSectorAt(to);
+
+        if (fromSector == null || toSector == null) {
+            return false;
+        }
+
+        if (isRejected(fromSector, toSector)) {
+            return false;
+        }
+
+        trace.x           = from.getX();
+        trace.y           = from.getY();
+        trace.xDiff       = to.getX() - from.getX();
+        trace.yDiff       = to.getY() - from.getY();
+        trace.z           = fromSector.getFloorHeight() + VIEW_HEIGHT;
+        trace.topSlope    = toSector.getFloorHeight() + TARGET_HEIGHT - trace.z;
+        trace.bottomSlope = toSector.getFloorHeight()                 - trace.z;
+
+        if (nodes == null) {
+            for (Line line: lines) {
+                if (!crossLine(line, trace)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return crossNode(nodes.getRoot(), trace);
+    }
+
+    private boolean isRejected(Sector fromSector, Sector toSector) {
+        if (reject == null) {
+            return false;
+        }
+
+        int bit = fromSector.getNumber() * sectorCount + toSector.getNumber();
+
+        return (reject[bit >> 3] & (1 << (bit & 7))) != 0;
+    }
+
+
+    // Returns true if the trace makes it through every subsector under the node.
+    private boolean crossNode(int child, Trace trace) {
+        if ((child & BspTree.SUBSECTOR) != 0) {
+            return crossSubsector(child & ~BspTree.SUBSECTOR, trace);
+        }
+
+        int side    = nodes.sideOf(child, trace.x,                trace.y);
+        int endSide = nodes.sideOf(child, trace.x + trace.xDiff, trace.y + trace.yDiff);
+
+        if (!crossNode(nodes.getNodeChild(child, side), trace)) {
+            return false;
+        }
+
+        // The end of the trace is on the same side, no need to look at the other
+        // half. Unless the trace runs along the partition line, where it can hit
+        // lines on either side.
+        if (side == endSide && !isAlongPartition(child, trace)) {
+            return true;
+        }
+
+        return crossNode(nodes.getNodeChild(child, side ^ 1), trace);
+    }
+
+    private boolean isAlongPartition(int node, Trace trace) {
+        long xDiff = nodes.getNodeXDiff(node);
+        long yDiff = nodes.getNodeYDiff(node);
+
+        return yDiff * trace.xDiff == xDiff * trace.yDiff
+            && yDiff * (trace.x - nodes.getNodeX(node)) == xDiff * (trace.y - nodes.getNodeY(node));
+    }
+
+    private boolean crossSubsector(int subsector, Trace trace) {
+        int firstSeg = nodes.getFirstSeg(subsector);
+        int lastSeg  = firstSeg + nodes.getSubsectorSegCount(subsector);
+
+        for (int seg = firstSeg; seg < lastSeg; ++seg) {
+            if (!crossLine(nodes.getSegLine(seg), trace)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Returns false if the line blocks the trace, narrowing the sight slopes
+    // if it passes through an opening.
+    private boolean crossLine(Line line, Trace trace) {
+        int  startX = line.getStart().getX(), startY = line.getStart().getY();
+        int  endX   = line.getEnd  ().getX(), endY   = line.getEnd  ().getY();
+
+        // Line endpoints must be on opposite sides of the trace...
+        long startSide = Line.orientation(trace.x, trace.y, trace.xDiff, trace.yDiff, startX, startY);
+        long endSide   = Line.orientation(trace.x, trace.y, trace.xDiff, trace.yDiff, endX,   endY);
+
+        if ((startSide > 0) == (endSide > 0)) {
+            return true;
+        }
+
+        // ...and the trace endpoints on opposite sides of the line.
+        int  lineXDiff = endX - startX;
+        int  lineYDiff = endY - startY;
+        long fromSide  = Line.orientation(startX, startY, lineXDiff, lineYDiff, trace.x,               trace.y);
+        long toSide    = Line.orientation(startX, startY, lineXDiff, lineYDiff, trace.x + trace.xDiff, trace.y + trace.yDiff);
+
+        if ((fromSide > 0) == (toSide > 0)) {
+            return true;
+        }
+
+        // Solid wall.
+        Side front = line.getRightSide();
+        Side back  = line.getLeftSide ();
+
+        if ((line.getFlags() & Line.TWO_SIDED) == 0 || front == null || back == null) {
+            return false;
+        }
+
+        Sector frontSector = front.getSector();
+        Sector backSector  = back .getSector();
+
+        // No height change, nothing to clip against.
+        if (frontSector.getFloorHeight  () == backSector.getFloorHeight  ()
+         && frontSector.getCeilingHeight() == backSector.getCeilingHeight())
+        {
+            return true;
+        }
+
+        int openTop    = min(frontSector.getCeilingHeight(), backSector.getCeilingHeight());
+        int openBottom = max(frontSector.getFloorHeight  (), backSector.getFloorHeight  ());
+
+        // Closed door.
+        if (openBottom >= openTop) {
+            return false;
+        }
+
+        // Fraction of the way along the trace that the line is crossed.
+        double fraction = (double) fromSide / (fromSide - toSide);
+
+        if (fraction <= 0) {
+            return true;
+        }
+
+        if (frontSector.getFloorHeight() != backSector.getFloorHeight()) {
+            trace.bottomSlope = max(trace.bottomSlope, (openBottom - trace.z) / fraction);
+        }
+
+        if (frontSector.getCeilingHeight() != backSector.getCeilingHeight()) {
+            trace.topSlope    = min(trace.topSlope,    (openTop    - trace.z) / fraction);
+        }
+
+        return trace.topSlope > trace.bottomSlope;
+    }
+}
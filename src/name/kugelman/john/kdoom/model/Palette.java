@@ -13,6 +13,7 @@ public class Palette {
 
     byte[][]          paletteData;
     IndexColorModel[] colorModels;
+    int[][]           colors;
     int               activePalette;
 
     Palette() throws IOException {
@@ -24,6 +25,7 @@ public class Palette {
 
         this.paletteData   = new byte[lump.getSize() / SIZE][];
         this.colorModels   = new IndexColorModel[paletteData.length];
+        this.colors        = new int[paletteData.length][];
         this.activePalette = 0;
 
         ByteBuffer buffer = lump.getData();
@@ -33,6 +35,9 @@ public class Palette {
             buffer.get(paletteData[i]);
 
             colorModels[i] = new IndexColorModel(8, COLORS, paletteData[i], 0, false);
+            colors     [i] = new int[COLORS];
+
+            colorModels[i].getRGBs(colors[i]);
         }
     }
 
@@ -52,4 +57,18 @@ public class Palette {
     public IndexColorModel getColorModel() {
         return colorModels[activePalette];
     }
+
+    public IndexColorModel getColorModel(int palette) {
+        return colorModels[palette];
+    }
+
+    // Opaque ARGB colours of the active palette, for converting palette
+    // indices. Do not modify.
+    public int[] getColors() {
+        return colors[activePalette];
+    }
+
+    public int[] getColors(int palette) {
+        return colors[palette];
+    }
 }
@@ -8,10 +8,13 @@ import java.util.*;
 
 import name.kugelman.john.kdoom.file.*;
 
+import static java.lang.Math.*;
+
 public class Patch {
-    private Lump      lump;
-    private Dimension size;
-    private Point     offset;
+    private Lump         lump;
+    private Dimension    size;
+    private Point        offset;
+    private IndexedImage indexedImage;
 
     Patch(Lump lump) throws IOException {
         ShortBuffer buffer = lump.getData().asShortBuffer();
@@ -26,6 +29,10 @@ public class Patch {
         return lump.getName();
     }
 
+    public Lump getLump() {
+        return lump;
+    }
+
     public Dimension getSize() {
         return size;
     }
@@ -35,59 +42,68 @@ public class Patch {
     }
 
 
+    // Decoded once per palette and shared through the ImageCache, including by
+    // every texture that uses the patch; do not draw on the result.
     public BufferedImage getImage() throws IOException {
-        ByteBuffer buffer = lump.getData();
+        return getImage(Resources.getPalette().getActivePalette());
+    }
 
-        // Read image dimensions.
-        int   width  = buffer.getShort() & 0xffff;
-        int   height = buffer.getShort() & 0xffff;
-        short top    = buffer.getShort();
-        short left   = buffer.getShort();
+    public BufferedImage getImage(int palette) throws IOException {
+        BufferedImage image = ImageCache.getShared().get(this, palette);
 
-        BufferedImage  image      = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        ColorModel     colorModel = Resources.getPalette().getColorModel();
+        if (image == null) {
+            image = getIndexedImage().toImage(Resources.getPalette().getColors(palette));
+            ImageCache.getShared().put(this, palette, image);
+        }
 
-        // Read column offsets.
-        int[] columnOffsets = new int[width];
+        return image;
+    }
 
-        for (int i = 0; i < width; ++i) {
-            columnOffsets[i] = buffer.getInt();
+    // Palette indices and transparency, decoded straight from the column posts.
+    // Decoded once and kept, at about a quarter of the size of an ARGB image.
+    public synchronized IndexedImage getIndexedImage() throws IOException {
+        if (indexedImage == null) {
+            indexedImage = decode(lump.getData());
         }
 
-        // Read pixel data for each column.
-        for (int column = 0; column < columnOffsets.length; ++column) {
-            buffer.position(columnOffsets[column]);
+        return indexedImage;
+    }
 
-            int y = 0;
+    // Decodes a patch lump's data, given as from Lump.getData.
+    public static IndexedImage decode(ByteBuffer buffer) {
+        byte[]       data   = buffer.array();
+
+        // Read image dimensions.
+        int          width  = buffer.getShort() & 0xffff;
+        int          height = buffer.getShort() & 0xffff;
+                              buffer.getShort();
+                              buffer.getShort();
+
+        IndexedImage image  = new IndexedImage(width, height);
+
+        // Read pixel data for each column. Each post is a row start, a pixel
+        // count, a padding byte, the pixels and another padding byte.
+        for (int column = 0; column < width; ++column) {
+            int position = buffer.getInt();
 
-            // Draw posts.
             for (;;) {
-                int rowStart = buffer.get() & 0xff;
+                int rowStart = data[position] & 0xff;
 
                 if (rowStart == 255) {
                     break;
                 }
 
-                int pixelCount = buffer.get() & 0xff;
+                int pixelCount = data[position + 1] & 0xff;
+                int end        = min(rowStart + pixelCount, height);
 
-                buffer.get();
+                position += 3;
 
-                // Draw transparent pixels between posts.
-                while (y < rowStart) {
-                    image.setRGB(column, y++, 0);
+                for (int y = rowStart, pixel = rowStart * width + column; y < end; ++y, pixel += width) {
+                    image.indices[pixel] = data[position + y - rowStart];
+                    image.setOpaque(pixel);
                 }
 
-                // Draw post.
-                for (; pixelCount > 0; --pixelCount) {
-                    image.setRGB(column, y++, colorModel.getRGB(buffer.get() & 0xff));
-                }
-
-                buffer.get();
-            }
-
-            // Draw transparent pixels at bottom of column.
-            while (y < height) {
-                image.setRGB(column, y++, 0);
+                position += pixelCount + 1;
             }
         }
 
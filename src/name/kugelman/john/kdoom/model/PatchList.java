@@ -42,6 +42,16 @@ public class PatchList extends AbstractMap<String, Patch> {
         return patchesByName.entrySet();
     }
 
+    @Override
+    public Patch get(Object key) {
+        return patchesByName.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return patchesByName.containsKey(key);
+    }
+
 
     public String getName(short number) throws IndexOutOfBoundsException {
         return patchNames.get(number);
@@ -0,0 +1,282 @@
+package name.kugelman.john.kdoom.model;
+
+import java.util.*;
+
+import static java.lang.Math.*;
+
+// Shortest walkable routes between two points of a level. The search is A*
+// over the portals of the sector graph: each node is an edge of the graph,
+// standing at the midpoint of the line it crosses, and moving on means crossing
+// another line of the sector just entered. Straight-line distance to the goal
+// is the heuristic.
+//
+// A player can cross a line if it has two sides and is not PLAYERS_BLOCKED, the
+// floor beyond is no more than a step higher, and there is headroom to stand
+// in the opening and in the sector beyond.
+//
+// The portal data is immutable and each thread searches with its own work
+// arrays, sized by the number of portals, so any number of queries can run at
+// once against one level.
+public class PathFinder {
+    public static final int STEP_HEIGHT   = 24;
+    public static final int PLAYER_HEIGHT = 56;
+
+    public static class Path {
+        private double         length;
+        private List<Location> waypoints;
+        private List<Line>     lines;
+
+        Path(double length, List<Location> waypoints, List<Line> lines) {
+            this.length    = length;
+            this.waypoints = waypoints;
+            this.lines     = lines;
+        }
+
+        public double getLength() {
+            return length;
+        }
+
+        // The start, the midpoint of every line crossed, and the goal.
+        public List<Location> waypoints() {
+            return Collections.unmodifiableList(waypoints);
+        }
+
+        public List<Line> lines() {
+            return Collections.unmodifiableList(lines);
+        }
+    }
+
+    private class Search {
+        // Nodes are portal edges, plus one extra node for the goal.
+        int       generation;
+        int[]     generations;
+        double[]  costs;
+        int[]     parents;
+        boolean[] isClosed;
+
+        double[]  heapKeys;
+        int[]     heap;
+        int[]     heapPositions;
+        int       heapSize;
+
+        Search() {
+            int nodeCount = graph.getEdgeCount() + 1;
+
+            this.generations   = new int    [nodeCount];
+            this.costs         = new double [nodeCount];
+            this.parents       = new int    [nodeCount];
+            this.isClosed      = new boolean[nodeCount];
+            this.heapKeys      = new double [nodeCount];
+            this.heap          = new int    [nodeCount];
+            this.heapPositions = new int    [nodeCount];
+        }
+
+        void relax(int node, int parent, double cost, double heuristic) {
+            boolean isSeen = generations[node] == generation;
+
+            if (isSeen && (isClosed[node] || cost >= costs[node])) {
+                return;
+            }
+
+            generations[node] = generation;
+            isClosed   [node] = false;
+            costs      [node] = cost;
+            parents    [node] = parent;
+            heapKeys   [node] = cost + heuristic;
+
+            if (isSeen) {
+                siftUp(heapPositions[node]);
+            }
+            else {
+                heap[heapSize]      = node;
+                heapPositions[node] = heapSize;
+                siftUp(heapSize++);
+            }
+        }
+
+        int pop() {
+            int top = heap[0];
+
+            heap[0] = heap[--heapSize];
+            heapPositions[heap[0]] = 0;
+            siftDown(0);
+
+            isClosed[top] = true;
+
+            return top;
+        }
+
+        void siftUp(int position) {
+            int node = heap[position];
+
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+
+                if (heapKeys[heap[parent]] <= heapKeys[node]) {
+                    break;
+                }
+
+                heap[position]                = heap[parent];
+                heapPositions[heap[position]] = position;
+                position                      = parent;
+            }
+
+            heap[position]      = node;
+            heapPositions[node] = position;
+        }
+
+        void siftDown(int position) {
+            int node = heap[position];
+
+            for (;;) {
+                int child = position * 2 + 1;
+
+                if (child >= heapSize) {
+                    break;
+                }
+
+                if (child + 1 < heapSize && heapKeys[heap[child + 1]] < heapKeys[heap[child]]) {
+                    ++child;
+                }
+
+                if (heapKeys[node] <= heapKeys[heap[child]]) {
+                    break;
+                }
+
+                heap[position]                = heap[child];
+                heapPositions[heap[position]] = position;
+                position                      = child;
+            }
+
+            heap[position]      = node;
+            heapPositions[node] = position;
+        }
+    }
+
+
+    private Level       level;
+    private List<Line>  lines;
+    private SectorGraph graph;
+    private boolean[]   isPassable;
+    private double[]    portalXs, portalYs;
+
+    private ThreadLocal<Search> searches;
+
+    public PathFinder(Level level) {
+        this.level      = level;
+        this.lines      = level.lines();
+        this.graph      = level.getSectorGraph();
+        this.isPassable = new boolean[graph.getEdgeCount()];
+        this.portalXs   = new double [graph.getEdgeCount()];
+        this.portalYs   = new double [graph.getEdgeCount()];
+
+        List<Sector> sectors = level.sectors();
+
+        for (int edge = 0; edge < isPassable.length; ++edge) {
+            Line   line   = lines  .get(graph.getLine  (edge));
+            Sector source = sectors.get(graph.getSource(edge));
+            Sector target = sectors.get(graph.getTarget(edge));
+
+            int    openTop    = min(source.getCeilingHeight(), target.getCeilingHeight());
+            int    openBottom = max(source.getFloorHeight  (), target.getFloorHeight  ());
+
+            isPassable[edge] = (line.getFlags() & Line.PLAYERS_BLOCKED) == 0
+                            && graph.getFloorDelta(edge) <= STEP_HEIGHT
+                            && openTop - openBottom >= PLAYER_HEIGHT
+                            && target.getCeilingHeight() - target.getFloorHeight() >= PLAYER_HEIGHT;
+
+            portalXs[edge] = (line.getStart().getX() + line.getEnd().getX()) / 2.0;
+            portalYs[edge] = (line.getStart().getY() + line.getEnd().getY()) / 2.0;
+        }
+
+        this.searches = new ThreadLocal<Search>() {
+            @Override
+            protected Search initialValue() {
+                return new Search();
+            }
+        };
+    }
+
+
+    public Path findPath(Thing from, Thing to) {
+        return findPath(from.getLocation(), to.getLocation());
+    }
+
+    // Returns null if there is no walkable route.
+    public Path findPath(Location from, Location to) {
+        Sector fromSector = level.getSectorAt(from);
+        Sector toSector   = level.getSectorAt(to);
+
+        if (fromSector == null || toSector == null) {
+            return null;
+        }
+
+        if (fromSector == toSector) {
+            return new Path(from.distanceTo(to), Arrays.asList(from, to), Collections.<Line>emptyList());
+        }
+
+        Search search      = searches.get();
+        int    goal        = graph.getEdgeCount();
+        int    startSector = fromSector.getNumber();
+        int    goalSector  = toSector  .getNumber();
+
+        ++search.generation;
+        search.heapSize = 0;
+
+        // Leave the starting sector by any of its portals.
+
+        for (int edge = graph.getFirstEdge(startSector); edge < graph.getEndEdge(startSector); ++edge) {
+            if (isPassable[edge]) {
+                search.relax(edge, -1, distance(from, edge), distance(to, edge));
+            }
+        }
+
+        while (search.heapSize > 0) {
+            int node = search.pop();
+
+            if (node == goal) {
+                return buildPath(search, from, to);
+            }
+
+            int    sector = graph.getTarget(node);
+            double cost   = search.costs[node];
+
+            if (sector == goalSector) {
+                search.relax(goal, node, cost + distance(to, node), 0);
+            }
+
+            for (int edge = graph.getFirstEdge(sector); edge < graph.getEndEdge(sector); ++edge) {
+                if (!isPassable[edge] || graph.getLine(edge) == graph.getLine(node)) {
+                    continue;
+                }
+
+                double step = hypot(portalXs[edge] - portalXs[node], portalYs[edge] - portalYs[node]);
+
+                search.relax(edge, node, cost + step, distance(to, edge));
+            }
+        }
+
+        return null;
+    }
+
+    private double distance(Location location, int edge) {
+        return hypot(location.getX() - portalXs[edge], location.getY() - portalYs[edge]);
+    }
+
+    private Path buildPath(Search search, Location from, Location to) {
+        LinkedList<Location> waypoints = new LinkedList<Location>();
+        LinkedList<Line>     lines     = new LinkedList<Line>();
+        int                  goal      = graph.getEdgeCount();
+
+        waypoints.addFirst(to);
+
+        for (int node = search.parents[goal]; node >= 0; node = search.parents[node]) {
+            waypoints.addFirst(new Location((short) round(portalXs[node]), (short) round(portalYs[node])));
+            lines    .addFirst(this.lines.get(graph.getLine(node)));
+        }
+
+        waypoints.addFirst(from);
+
+        return new Path(search.costs[goal], new ArrayList<Location>(waypoints), new ArrayList<Line>(lines));
+    }
+}
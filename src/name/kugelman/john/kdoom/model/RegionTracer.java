@@ -0,0 +1,222 @@
+package name.kugelman.john.kdoom.model;
+
+import java.util.*;
+
+import static java.lang.Math.*;
+
+// Level-wide tables for tracing sector regions. Sides are numbered in the order
+// they were created, and for each vertex the sides that can follow a side
+// ending there are flattened into one array, with zero-length lines already
+// stepped over. Sector.updateGeometry walks these tables instead of building
+// collections at every step. The remaining-sides bit set is shared by all
+// sectors and is left clear after each one.
+class RegionTracer {
+    private Side[]    sides;
+    private int[]     sideStarts, sideEnds;
+    private int[]     sideLines;
+    private double[]  sideAngles;
+    private boolean[] sideIsPoints;
+
+    private int[]     startingOffsets;
+    private int[]     startingSides;
+    private int[]     connectingOffsets;
+    private int[]     connectingSides;
+    private boolean[] isExpanding;
+
+    private BitSet    remainingSides;
+
+    RegionTracer(List<Vertex> vertices, List<Line> lines) {
+        List<Side> sideList = new ArrayList<Side>(lines.size() * 2);
+
+        for (Line line: lines) {
+            if (line.getRightSide() != null) sideList.add(line.getRightSide());
+            if (line.getLeftSide () != null) sideList.add(line.getLeftSide ());
+        }
+
+        sides        = sideList.toArray(new Side[sideList.size()]);
+        sideStarts   = new int    [sides.length];
+        sideEnds     = new int    [sides.length];
+        sideLines    = new int    [sides.length];
+        sideAngles   = new double [sides.length];
+        sideIsPoints = new boolean[sides.length];
+
+        for (int i = 0; i < sides.length; ++i) {
+            Side side = sides[i];
+
+            side.index      = i;
+            sideStarts  [i] = side.getStart().getNumber() & 0xFFFF;
+            sideEnds    [i] = side.getEnd  ().getNumber() & 0xFFFF;
+            sideLines   [i] = side.getLine ().getNumber() & 0xFFFF;
+            sideAngles  [i] = side.getAngle();
+            sideIsPoints[i] = side.getLine ().isPoint();
+        }
+
+        // Sides starting at each vertex, in creation order.
+        startingOffsets = new int[vertices.size() + 1];
+        startingSides   = new int[sides.length];
+
+        for (int i = 0; i < sides.length; ++i) {
+            ++startingOffsets[sideStarts[i] + 1];
+        }
+
+        for (int vertex = 0; vertex < vertices.size(); ++vertex) {
+            startingOffsets[vertex + 1] += startingOffsets[vertex];
+        }
+
+        int[] nextStartingSides = Arrays.copyOf(startingOffsets, vertices.size());
+
+        for (int i = 0; i < sides.length; ++i) {
+            startingSides[nextStartingSides[sideStarts[i]]++] = i;
+        }
+
+        // Connecting sides of each vertex, with zero-length lines expanded in
+        // place. Count them first, then fill them in.
+        isExpanding       = new boolean[vertices.size()];
+        connectingOffsets = new int    [vertices.size() + 1];
+
+        for (int vertex = 0; vertex < vertices.size(); ++vertex) {
+            connectingOffsets[vertex + 1] = addConnectingSides(vertex, connectingOffsets[vertex]);
+        }
+
+        connectingSides = new int[connectingOffsets[vertices.size()]];
+
+        for (int vertex = 0; vertex < vertices.size(); ++vertex) {
+            addConnectingSides(vertex, connectingOffsets[vertex]);
+        }
+
+        remainingSides = new BitSet(sides.length);
+    }
+
+    // Adds the sides that can follow a side ending at the vertex, starting at
+    // index count of connectingSides, or just counts them while it is null.
+    private int addConnectingSides(int vertex, int count) {
+        // A loop of zero-length lines leads nowhere new.
+        if (isExpanding[vertex]) {
+            return count;
+        }
+
+        isExpanding[vertex] = true;
+
+        for (int i = startingOffsets[vertex]; i < startingOffsets[vertex + 1]; ++i) {
+            int side = startingSides[i];
+
+            // Ignore zero-length lines.
+            if (sideIsPoints[side]) {
+                count = addConnectingSides(sideEnds[side], count);
+            }
+            else {
+                if (connectingSides != null) {
+                    connectingSides[count] = side;
+                }
+
+                ++count;
+            }
+        }
+
+        isExpanding[vertex] = false;
+
+        return count;
+    }
+
+
+    // Same as Side.angleBetween, on the precomputed angles.
+    private double angleBetween(int side1, int side2) {
+        if (sideLines[side1] == sideLines[side2]) {
+            return -PI;
+        }
+
+        double angle = sideAngles[side1] - sideAngles[side2];
+
+        // Force angle to be between -pi and +pi.
+        angle += PI * 2;
+        angle %= PI * 2;
+
+        if (angle >  PI) {
+            angle -= PI * 2;
+        }
+
+        return angle;
+    }
+
+    void trace(Collection<Side> sectorSides,
+               Collection<List<Side>> additiveRegions,
+               Collection<List<Side>> subtractiveRegions,
+               Collection<List<Side>> unclosedRegions)
+    {
+        int[] sectorSideIndices = new int[sectorSides.size()];
+        int   sideCount         = 0;
+
+        for (Side side: sectorSides) {
+            sectorSideIndices[sideCount++] = side.index;
+            remainingSides.set(side.index);
+        }
+
+        int nextFirst = 0;
+
+        nextRegion: for (;;) {
+            // Start each region at the first side not yet traced.
+            while (nextFirst < sideCount && !remainingSides.get(sectorSideIndices[nextFirst])) {
+                ++nextFirst;
+            }
+
+            if (nextFirst == sideCount) {
+                break;
+            }
+
+            int        firstSide = sectorSideIndices[nextFirst];
+            int        lastSide  = firstSide;
+            List<Side> region    = new ArrayList<Side>();
+            double     angleSum  = 0;
+
+            remainingSides.clear(firstSide);
+            region.add(sides[firstSide]);
+
+            // Each iteration finds the next side in the region.
+            for (;;) {
+                int    nextSide  = -1;
+                double nextAngle = Double.NEGATIVE_INFINITY;
+                int    vertex    = sideEnds[lastSide];
+
+                // Find the best connecting side, the one with the most acute angle.
+                for (int i = connectingOffsets[vertex]; i < connectingOffsets[vertex + 1]; ++i) {
+                    int    side  = connectingSides[i];
+                    double angle = angleBetween(lastSide, side);
+
+                    if (angle > nextAngle) {
+                        nextSide  = side;
+                        nextAngle = angle;
+                    }
+                }
+
+                // Didn't find a connecting side.
+                if (nextSide < 0) {
+                    unclosedRegions.add(region);
+                    continue nextRegion;
+                }
+
+                remainingSides.clear(nextSide);
+
+                // Add side to region and compute angle change.
+                if (!sideIsPoints[nextSide]) {
+                    region.add(sides[nextSide]);
+                    angleSum += nextAngle;
+                    lastSide  = nextSide;
+                }
+
+                // Polygon closed.
+                if (sideEnds[nextSide] == sideStarts[firstSide]) {
+                    angleSum += angleBetween(nextSide, firstSide);
+
+                    // Angles should add up to either 360 or -360.
+                    assert abs((int) round(angleSum * 180 / PI)) == 360;
+
+                    // Determine if polygon is additive or subtractive.
+                    if (angleSum > 0) additiveRegions.add(region);
+                    else              subtractiveRegions.add(region);
+
+                    continue nextRegion;
+                }
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ import name.kugelman.john.kdoom.file.*;
 public abstract class Resources {
     private static Wad         wad;
     private static Palette     palette;
+    private static ColorMap    colorMap;
     private static FlatList    flats;
     private static PatchList   patches;
     private static TextureList textures;
@@ -15,8 +16,11 @@ public abstract class Resources {
     
 
     public static void load(Wad wad) throws IOException {
+        ImageCache.getShared().clear();
+
         Resources.wad      = wad;
         Resources.palette  = new Palette    ();
+        Resources.colorMap = new ColorMap   ();
         Resources.flats    = new FlatList   ();
         Resources.patches  = new PatchList  ();
         Resources.textures = new TextureList();
@@ -25,11 +29,12 @@ public abstract class Resources {
     }
 
 
-    public static Wad         getWad    () { return wad;      }
-    public static Palette     getPalette() { return palette;  }
-    public static FlatList    flats     () { return flats;    }
-    public static PatchList   patches   () { return patches;  }
-    public static TextureList textures  () { return textures; }
-    public static SoundList   sounds    () { return sounds;   }
-    public static LevelList   levels    () { return levels;   }
+    public static Wad         getWad     () { return wad;      }
+    public static Palette     getPalette () { return palette;  }
+    public static ColorMap    getColorMap() { return colorMap; }
+    public static FlatList    flats      () { return flats;    }
+    public static PatchList   patches    () { return patches;  }
+    public static TextureList textures   () { return textures; }
+    public static SoundList   sounds     () { return sounds;   }
+    public static LevelList   levels     () { return levels;   }
 }
@@ -1,6 +1,9 @@
 package name.kugelman.john.kdoom.model;
 
+import java.awt.*;
+import java.awt.geom.*;
 import java.util.*;
+import java.util.List;
 
 import static java.lang.Math.*;
 
@@ -72,6 +75,14 @@ public class Sector {
     private Collection<List<Side>> subtractiveRegions;
     private Collection<List<Side>> unclosedRegions;
 
+    private int[]                  triangles;
+    private Path2D                 shape;
+    private Map<Integer, Path2D>   simplifiedShapes;
+
+    private short                  minX, minY, maxX, maxY;
+    private double                 area, perimeter;
+    private boolean                areaKnown;
+
 
     Sector(short number,
            short  floorHeight,   short  ceilingHeight,
@@ -169,70 +180,181 @@ public class Sector {
         return Collections.unmodifiableCollection(unclosedRegions);
     }
 
-    void updateGeometry() {
+    void updateGeometry(RegionTracer tracer) {
         additiveRegions    = new ArrayList<List<Side>>();
         subtractiveRegions = new ArrayList<List<Side>>();
         unclosedRegions    = new ArrayList<List<Side>>();
 
-        Set<Side> sides    = new LinkedHashSet<Side>(this.sides);
+        tracer.trace(sides, additiveRegions, subtractiveRegions, unclosedRegions);
 
-        nextRegion: while (!sides.isEmpty()) {
-            // System.out.printf("Sector #%d, region #%d%n", number, additiveRegions.size() + subtractiveRegions.size() + unclosedRegions.size() + 1);
+        triangles        = null;
+        areaKnown        = false;
+        shape            = createShape(0);
+        simplifiedShapes = new HashMap<Integer, Path2D>();
 
-            List<Side> region    = new ArrayList<Side>();
-            Side       firstSide = sides.iterator().next();
-            double     angleSum  = 0;
+        updateMetrics();
+    }
 
-            sides .remove(firstSide);
-            region.add   (firstSide);
+    // Subtractive regions lie inside additive ones, so with the even-odd rule
+    // they come out as holes without any area arithmetic.
+    private Path2D createShape(int tolerance) {
+        Path2D shape = new Path2D.Float(Path2D.WIND_EVEN_ODD);
 
-            // Each iteration finds the next side in the region.
-            for (;;) {
-                Side   lastSide  = region.get(region.size() - 1);
-                Side   nextSide  = null;
-                double nextAngle = Double.NEGATIVE_INFINITY;
+        for (List<Side> region: additiveRegions)    appendRegion(shape, region, tolerance);
+        for (List<Side> region: subtractiveRegions) appendRegion(shape, region, tolerance);
 
-                // Find the best connecting side, the one with the most acute angle.
-                for (Side side: lastSide.getConnectingSides()) {
-                    double angle = Side.angleBetween(lastSide, side);
+        return shape;
+    }
 
-                    if (angle > nextAngle) {
-                        nextSide  = side;
-                        nextAngle = angle;
-                    }
-                }
+    // Leaves out points within tolerance of the last one kept, and the whole
+    // region if fewer than three are left.
+    private static void appendRegion(Path2D shape, List<Side> region, int tolerance) {
+        List<Vertex> points = new ArrayList<Vertex>(region.size());
 
-                // Didn't find a connecting side.
-                if (nextSide == null) {
-                    unclosedRegions.add(region);
-                    continue nextRegion;
-                }
+        for (Side side: region) {
+            if (tolerance == 0 || points.isEmpty()
+             || !isWithin(side.getStart(), points.get(points.size() - 1), tolerance))
+            {
+                points.add(side.getStart());
+            }
+        }
 
-                sides.remove(nextSide);
+        if (tolerance > 0 && points.size() > 1 && isWithin(points.get(points.size() - 1), points.get(0), tolerance)) {
+            points.remove(points.size() - 1);
+        }
 
-                // Add side to region and compute angle change.
-                if (!nextSide.getLine().isPoint()) {
-                    region.add(nextSide);
-                    angleSum += Side.angleBetween(lastSide, nextSide);
-                }
+        if (points.size() < 3) {
+            return;
+        }
 
-                // Polygon closed.
-                if (nextSide.getEnd() == firstSide.getStart()) {
-                    angleSum += Side.angleBetween(nextSide, firstSide);
+        shape.moveTo(points.get(0).getX(), points.get(0).getY());
 
-                    // Angles should add up to either 360 or -360.
-                    assert abs((int) round(angleSum * 180 / PI)) == 360;
+        for (int i = 1; i < points.size(); ++i) {
+            shape.lineTo(points.get(i).getX(), points.get(i).getY());
+        }
 
-                    // System.out.printf("%-11s %d angles sum to %s%n", angleSum > 0 ? "ADDITIVE" : "SUBTRACTIVE", region.size() - 1, (int) round(angleSum * 180 / PI));
+        shape.closePath();
+    }
 
-                    // Determine if polygon is additive or subtractive.
-                    if (angleSum > 0) additiveRegions.add(region);
-                    else              subtractiveRegions.add(region);
+    private static boolean isWithin(Vertex a, Vertex b, int tolerance) {
+        return abs(a.getX() - b.getX()) <= tolerance && abs(a.getY() - b.getY()) <= tolerance;
+    }
 
-                    continue nextRegion;
-                }
+    private void updateMetrics() {
+        minX = minY = Short.MAX_VALUE;
+        maxX = maxY = Short.MIN_VALUE;
+
+        perimeter = 0;
+
+        for (Side side: sides) {
+            extendBounds(side.getStart());
+            extendBounds(side.getEnd  ());
+
+            perimeter += side.getLine().getLength();
+        }
+    }
+
+    private void extendBounds(Vertex vertex) {
+        short x = vertex.getX();
+        short y = vertex.getY();
+
+        if (x < minX) minX = x;
+        if (y < minY) minY = y;
+        if (x > maxX) maxX = x;
+        if (y > maxY) maxY = y;
+    }
+
+    public int getTriangleCount() {
+        return triangles().length / 3;
+    }
+
+    // Vertex numbers, three per triangle, wound counter-clockwise.
+    public int[] getTriangles() {
+        return triangles().clone();
+    }
+
+    // Triangulated on first use, as only exporters want triangles.
+    private synchronized int[] triangles() {
+        if (triangles == null) {
+            triangles = Triangulator.triangulate(additiveRegions, subtractiveRegions);
+        }
+
+        return triangles;
+    }
+
+
+    // The closed regions in map coordinates, independent of any scale.
+    public Shape getShape() {
+        return shape;
+    }
+
+    // The shape with detail finer than tolerance map units taken out, for
+    // drawing zoomed out. Built once for each tolerance asked for.
+    public synchronized Shape getShape(int tolerance) {
+        if (tolerance <= 0) {
+            return shape;
+        }
+
+        Path2D simplifiedShape = simplifiedShapes.get(tolerance);
+
+        if (simplifiedShape == null) {
+            simplifiedShape = createShape(tolerance);
+            simplifiedShapes.put(tolerance, simplifiedShape);
+        }
+
+        return simplifiedShape;
+    }
+
+
+    // Bounds of every side, including those in unclosed regions. A sector with
+    // no sides has empty bounds, with the minimums above the maximums.
+    public short getMinX() { return minX; }
+    public short getMinY() { return minY; }
+    public short getMaxX() { return maxX; }
+    public short getMaxY() { return maxY; }
+
+    public boolean boundsContain(Location location) {
+        return location.getX() >= minX && location.getX() <= maxX
+            && location.getY() >= minY && location.getY() <= maxY;
+    }
+
+    // Area of the triangulated regions, in square map units. Summing triangles
+    // rather than regions gets holes nested inside holes right.
+    public synchronized double getArea() {
+        if (!areaKnown) {
+            Map<Integer, Vertex> vertices = new HashMap<Integer, Vertex>();
+
+            for (List<Side> region: additiveRegions)    addVertices(vertices, region);
+            for (List<Side> region: subtractiveRegions) addVertices(vertices, region);
+
+            int[] triangles  = triangles();
+            long  doubleArea = 0;
+
+            for (int i = 0; i < triangles.length; i += 3) {
+                Vertex a = vertices.get(triangles[i]);
+                Vertex b = vertices.get(triangles[i + 1]);
+                Vertex c = vertices.get(triangles[i + 2]);
+
+                doubleArea += abs((long) (b.getX() - a.getX()) * (c.getY() - a.getY())
+                                - (long) (c.getX() - a.getX()) * (b.getY() - a.getY()));
             }
+
+            area      = doubleArea / 2.0;
+            areaKnown = true;
         }
+
+        return area;
+    }
+
+    private static void addVertices(Map<Integer, Vertex> vertices, List<Side> region) {
+        for (Side side: region) {
+            vertices.put(side.getStart().getNumber() & 0xFFFF, side.getStart());
+        }
+    }
+
+    // Total length of the sector's sides.
+    public double getPerimeter() {
+        return perimeter;
     }
 
 
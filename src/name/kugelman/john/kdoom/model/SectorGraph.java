@@ -0,0 +1,377 @@
+package name.kugelman.john.kdoom.model;
+
+import java.util.*;
+
+// Sector adjacency in compressed sparse row form. The edges leaving sector s
+// are numbered edgeOffsets[s] to edgeOffsets[s + 1] - 1; each edge crosses one
+// two-sided line into a different sector. A line whose sides belong to two
+// different sectors yields one edge in each direction. Height deltas are the
+// target sector's height minus the source sector's.
+//
+// The graph is immutable. Queries run on a Search, which owns its work arrays
+// and reuses them from one query to the next; use one Search per thread.
+public class SectorGraph {
+    public interface EdgeWeight {
+        // Return a negative or infinite weight for edges that cannot be crossed.
+        double weight(int edge);
+    }
+
+    private int[] edgeOffsets;
+    private int[] edgeSources;
+    private int[] edgeTargets;
+    private int[] edgeLines;
+    private int[] edgeFloorDeltas;
+    private int[] edgeCeilingDeltas;
+
+    SectorGraph(Level level) {
+        List<Line>   lines       = level.lines();
+        List<Sector> sectors     = level.sectors();
+        int          sectorCount = sectors.size();
+
+        edgeOffsets = new int[sectorCount + 1];
+
+        // Count edges leaving each sector...
+        for (Line line: lines) {
+            if (isEdge(line)) {
+                ++edgeOffsets[sectorNumber(line.getRightSide()) + 1];
+                ++edgeOffsets[sectorNumber(line.getLeftSide ()) + 1];
+            }
+        }
+
+        for (int sector = 0; sector < sectorCount; ++sector) {
+            edgeOffsets[sector + 1] += edgeOffsets[sector];
+        }
+
+        // ...then fill them in.
+        int[] nextEdges = Arrays.copyOf(edgeOffsets, sectorCount);
+
+        edgeSources       = new int[edgeOffsets[sectorCount]];
+        edgeTargets       = new int[edgeOffsets[sectorCount]];
+        edgeLines         = new int[edgeOffsets[sectorCount]];
+        edgeFloorDeltas   = new int[edgeOffsets[sectorCount]];
+        edgeCeilingDeltas = new int[edgeOffsets[sectorCount]];
+
+        for (int i = 0; i < lines.size(); ++i) {
+            Line line = lines.get(i);
+
+            if (isEdge(line)) {
+                int right = sectorNumber(line.getRightSide());
+                int left  = sectorNumber(line.getLeftSide ());
+
+                addEdge(nextEdges[right]++, sectors.get(right), sectors.get(left),  i);
+                addEdge(nextEdges[left] ++, sectors.get(left),  sectors.get(right), i);
+            }
+        }
+    }
+
+    private void addEdge(int edge, Sector source, Sector target, int line) {
+        edgeSources      [edge] = source.getNumber();
+        edgeTargets      [edge] = target.getNumber();
+        edgeLines        [edge] = line;
+        edgeFloorDeltas  [edge] = target.getFloorHeight  () - source.getFloorHeight  ();
+        edgeCeilingDeltas[edge] = target.getCeilingHeight() - source.getCeilingHeight();
+    }
+
+    private static boolean isEdge(Line line) {
+        return line.getRightSide() != null && line.getLeftSide() != null
+            && line.getRightSide().getSector() != line.getLeftSide().getSector();
+    }
+
+    private static int sectorNumber(Side side) {
+        return side.getSector().getNumber();
+    }
+
+
+    public int getSectorCount() {
+        return edgeOffsets.length - 1;
+    }
+
+    public int getEdgeCount() {
+        return edgeTargets.length;
+    }
+
+    public int getFirstEdge(int sector) {
+        return edgeOffsets[sector];
+    }
+
+    public int getEndEdge(int sector) {
+        return edgeOffsets[sector + 1];
+    }
+
+    public int getSource(int edge) {
+        return edgeSources[edge];
+    }
+
+    public int getTarget(int edge) {
+        return edgeTargets[edge];
+    }
+
+    public int getLine(int edge) {
+        return edgeLines[edge];
+    }
+
+    public int getFloorDelta(int edge) {
+        return edgeFloorDeltas[edge];
+    }
+
+    public int getCeilingDelta(int edge) {
+        return edgeCeilingDeltas[edge];
+    }
+
+
+    public Search createSearch() {
+        return new Search();
+    }
+
+    public class Search {
+        private int[]    distances;
+        private double[] costs;
+        private int[]    parentEdges;
+        private int[]    order;
+        private int      orderCount;
+
+        // Binary heap of sectors keyed on cost, with each sector's heap position.
+        private int[]    heap;
+        private int[]    heapPositions;
+        private int      heapSize;
+
+        private Search() {
+            int sectorCount = getSectorCount();
+
+            this.distances     = new int   [sectorCount];
+            this.costs         = new double[sectorCount];
+            this.parentEdges   = new int   [sectorCount];
+            this.order         = new int   [sectorCount];
+            this.heap          = new int   [sectorCount];
+            this.heapPositions = new int   [sectorCount];
+        }
+
+        private void reset() {
+            Arrays.fill(distances,   -1);
+            Arrays.fill(costs,       Double.POSITIVE_INFINITY);
+            Arrays.fill(parentEdges, -1);
+
+            orderCount = 0;
+        }
+
+        private boolean canCross(EdgeWeight weight, int edge) {
+            if (weight == null) {
+                return true;
+            }
+
+            double cost = weight.weight(edge);
+
+            return cost >= 0 && cost < Double.POSITIVE_INFINITY;
+        }
+
+
+        // Visits sectors in order of the number of edges crossed to reach them.
+        // A null weight lets every edge be crossed. Returns the number reached.
+        public int breadthFirst(int origin, EdgeWeight weight) {
+            reset();
+
+            distances[origin]   = 0;
+            order[orderCount++] = origin;
+
+            // The order array doubles as the queue.
+            for (int head = 0; head < orderCount; ++head) {
+                int sector = order[head];
+
+                for (int edge = edgeOffsets[sector]; edge < edgeOffsets[sector + 1]; ++edge) {
+                    int target = edgeTargets[edge];
+
+                    if (distances[target] >= 0 || !canCross(weight, edge)) {
+                        continue;
+                    }
+
+                    distances  [target] = distances[sector] + 1;
+                    parentEdges[target] = edge;
+                    order[orderCount++] = target;
+                }
+            }
+
+            return orderCount;
+        }
+
+        // Finds the cheapest route from the origin to every sector. A null weight
+        // makes every edge cost 1. Returns the number of sectors reached.
+        public int dijkstra(int origin, EdgeWeight weight) {
+            reset();
+
+            heapSize          = 0;
+            costs    [origin] = 0;
+            distances[origin] = 0;
+
+            heapPush(origin);
+
+            while (heapSize > 0) {
+                int sector = heapPop();
+
+                order[orderCount++] = sector;
+
+                for (int edge = edgeOffsets[sector]; edge < edgeOffsets[sector + 1]; ++edge) {
+                    double edgeCost = weight == null ? 1 : weight.weight(edge);
+
+                    if (!(edgeCost >= 0 && edgeCost < Double.POSITIVE_INFINITY)) {
+                        continue;
+                    }
+
+                    int    target = edgeTargets[edge];
+                    double cost   = costs[sector] + edgeCost;
+
+                    if (cost >= costs[target]) {
+                        continue;
+                    }
+
+                    boolean isQueued = distances[target] >= 0;
+
+                    costs      [target] = cost;
+                    distances  [target] = distances[sector] + 1;
+                    parentEdges[target] = edge;
+
+                    if (isQueued) heapSiftUp(heapPositions[target]);
+                    else          heapPush  (target);
+                }
+            }
+
+            return orderCount;
+        }
+
+        // Labels each sector with the number of its connected component, counting
+        // from zero, and returns the number of components. Edges the weight
+        // rejects are not followed.
+        public int components(int[] labels, EdgeWeight weight) {
+            Arrays.fill(labels, -1);
+
+            int componentCount = 0;
+
+            for (int start = 0; start < labels.length; ++start) {
+                if (labels[start] >= 0) {
+                    continue;
+                }
+
+                int stackSize = 0;
+
+                labels[start]      = componentCount;
+                order[stackSize++] = start;
+
+                while (stackSize > 0) {
+                    int sector = order[--stackSize];
+
+                    for (int edge = edgeOffsets[sector]; edge < edgeOffsets[sector + 1]; ++edge) {
+                        int target = edgeTargets[edge];
+
+                        if (labels[target] >= 0 || !canCross(weight, edge)) {
+                            continue;
+                        }
+
+                        labels[target]     = componentCount;
+                        order[stackSize++] = target;
+                    }
+                }
+
+                ++componentCount;
+            }
+
+            orderCount = 0;
+
+            return componentCount;
+        }
+
+
+        // Results of the last breadthFirst or dijkstra.
+
+        public boolean isReached(int sector) {
+            return distances[sector] >= 0;
+        }
+
+        // Number of edges crossed, or -1 if unreached.
+        public int getDistance(int sector) {
+            return distances[sector];
+        }
+
+        // Total weight, or infinity if unreached.
+        public double getCost(int sector) {
+            return costs[sector];
+        }
+
+        // Edge used to reach the sector, or -1 for the origin and unreached sectors.
+        public int getParentEdge(int sector) {
+            return parentEdges[sector];
+        }
+
+        public int getReachedCount() {
+            return orderCount;
+        }
+
+        // Reached sectors in the order they were visited.
+        public int getReached(int index) {
+            return order[index];
+        }
+
+
+        private void heapPush(int sector) {
+            heap[heapSize]        = sector;
+            heapPositions[sector] = heapSize;
+
+            heapSiftUp(heapSize++);
+        }
+
+        private int heapPop() {
+            int top = heap[0];
+
+            heap[0] = heap[--heapSize];
+            heapPositions[heap[0]] = 0;
+
+            heapSiftDown(0);
+
+            return top;
+        }
+
+        private void heapSiftUp(int position) {
+            int sector = heap[position];
+
+            while (position > 0) {
+                int parent = (position - 1) / 2;
+
+                if (costs[heap[parent]] <= costs[sector]) {
+                    break;
+                }
+
+                heap[position]                = heap[parent];
+                heapPositions[heap[position]] = position;
+                position                      = parent;
+            }
+
+            heap[position]        = sector;
+            heapPositions[sector] = position;
+        }
+
+        private void heapSiftDown(int position) {
+            int sector = heap[position];
+
+            for (;;) {
+                int child = position * 2 + 1;
+
+                if (child >= heapSize) {
+                    break;
+                }
+
+                if (child + 1 < heapSize && costs[heap[child + 1]] < costs[heap[child]]) {
+                    ++child;
+                }
+
+                if (costs[sector] <= costs[heap[child]]) {
+                    break;
+                }
+
+                heap[position]                = heap[child];
+                heapPositions[heap[position]] = position;
+                position                      = child;
+            }
+
+            heap[position]        = sector;
+            heapPositions[sector] = position;
+        }
+    }
+}
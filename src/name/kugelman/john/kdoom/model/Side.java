@@ -8,11 +8,16 @@ public class Side {
     private Line    line;
     private Sidedef sidedef;
     private boolean isRightSidedef;
+    private double  angle;
+
+            int     index;
 
     Side(Line line, Sidedef sidedef, boolean isRightSidedef) {
         this.line           = line;
         this.sidedef        = sidedef;
         this.isRightSidedef = isRightSidedef;
+        this.angle          = atan2(getEnd().getY() - getStart().getY(),
+                                    getEnd().getX() - getStart().getX());
 
         sidedef.getSector().sides.add(this);
 
@@ -71,6 +76,11 @@ public class Side {
         return isRightSidedef ? line.getEnd() : line.getStart();
     }
 
+    // Direction from start to end, in radians.
+    public double getAngle() {
+        return angle;
+    }
+
     
     public Collection<Side> getConnectingSides() {
         // Usually only one connecting side.
@@ -99,12 +109,7 @@ public class Side {
             return -PI;
         }
 
-        double angle1 = atan2(side1.getEnd().getY() - side1.getStart().getY(),
-                              side1.getEnd().getX() - side1.getStart().getX());
-        double angle2 = atan2(side2.getEnd().getY() - side2.getStart().getY(),
-                              side2.getEnd().getX() - side2.getStart().getX());
-
-        double angle  = angle1 - angle2;
+        double angle  = side1.angle - side2.angle;
 
         // Force angle to be between -pi and +pi.
         angle += PI * 2;
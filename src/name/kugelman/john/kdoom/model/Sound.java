@@ -37,8 +37,11 @@ public class Sound {
     public AudioInputStream getAudioInputStream() throws IOException {
         byte[]      samples     = new byte[getSampleCount()];
         InputStream inputStream = new ByteArrayInputStream(samples);
+        ByteBuffer  data        = lump.getData();
 
-        lump.getData().get(samples);
+        // Skip the header.
+        data.position(8);
+        data.get(samples);
 
         return new AudioInputStream(inputStream, audioFormat, samples.length);
     }
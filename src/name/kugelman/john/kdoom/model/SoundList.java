@@ -24,6 +24,16 @@ public class SoundList extends AbstractMap<String, Sound> implements SortedMap<S
         return sounds.entrySet();
     }
 
+    @Override
+    public Sound get(Object key) {
+        return sounds.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return sounds.containsKey(key);
+    }
+
 
     // Implementation of SortedMap
 
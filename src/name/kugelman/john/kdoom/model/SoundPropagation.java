@@ -0,0 +1,125 @@
+package name.kugelman.john.kdoom.model;
+
+import java.util.*;
+
+import static java.lang.Math.*;
+
+// Flood fills noise across sectors the way Doom's P_RecursiveSound does. Sound
+// crosses two-sided lines with an open gap between floor and ceiling, and
+// passes through at most one SOUND_BLOCKED line; the second one stops it.
+//
+// The graph is shared but the work arrays are not, so each thread should use its
+// own SoundPropagation. Work arrays are reused between calls to propagate().
+public class SoundPropagation {
+    private static final byte CLOSED  = 0;
+    private static final byte OPEN    = 1;
+    private static final byte BLOCKED = 2;  // Open, but SOUND_BLOCKED.
+
+    private static final int  UNREACHED = 2;
+
+    private List<Sector> sectors;
+    private SectorGraph  graph;
+    private byte[]       edgeKinds;
+
+    // Work arrays: blocks crossed to reach each sector, and the sectors still to visit.
+    private int[]        sectorBlocks;
+    private int[]        stack;
+    private int[]        reached;
+    private int          reachedCount;
+
+    public SoundPropagation(Level level) {
+        this.sectors      = level.sectors();
+        this.graph        = level.getSectorGraph();
+        this.edgeKinds    = new byte[graph.getEdgeCount()];
+
+        this.sectorBlocks = new int[sectors.size()];
+        this.stack        = new int[sectors.size() * 2];
+        this.reached      = new int[sectors.size()];
+
+        Arrays.fill(sectorBlocks, UNREACHED);
+
+        List<Line> lines = level.lines();
+
+        for (int edge = 0; edge < edgeKinds.length; ++edge) {
+            Line   line  = lines.get(graph.getLine(edge));
+            Sector front = line.getRightSide().getSector();
+            Sector back  = line.getLeftSide ().getSector();
+
+            int    openTop    = min(front.getCeilingHeight(), back.getCeilingHeight());
+            int    openBottom = max(front.getFloorHeight  (), back.getFloorHeight  ());
+
+            if ((line.getFlags() & Line.TWO_SIDED) == 0 || openTop <= openBottom) {
+                edgeKinds[edge] = CLOSED;
+            }
+            else if ((line.getFlags() & Line.SOUND_BLOCKED) != 0) {
+                edgeKinds[edge] = BLOCKED;
+            }
+            else {
+                edgeKinds[edge] = OPEN;
+            }
+        }
+    }
+
+
+    // Returns the number of sectors the sound reaches, including the origin.
+    public int propagate(Sector origin) {
+        // Reset only what the previous call touched.
+        for (int i = 0; i < reachedCount; ++i) {
+            sectorBlocks[reached[i]] = UNREACHED;
+        }
+
+        reachedCount = 0;
+
+        int stackSize = 0;
+        int start     = origin.getNumber();
+
+        sectorBlocks[start]     = 0;
+        reached[reachedCount++] = start;
+        stack[stackSize++]      = start;
+
+        while (stackSize > 0) {
+            int sector = stack[--stackSize];
+            int blocks = sectorBlocks[sector];
+
+            for (int edge = graph.getFirstEdge(sector); edge < graph.getEndEdge(sector); ++edge) {
+                if (edgeKinds[edge] == CLOSED) {
+                    continue;
+                }
+
+                int target       = graph.getTarget(edge);
+                int targetBlocks = edgeKinds[edge] == BLOCKED ? blocks + 1 : blocks;
+
+                // Second block line, or already reached through no more blocks.
+                if (targetBlocks >= UNREACHED || targetBlocks >= sectorBlocks[target]) {
+                    continue;
+                }
+
+                if (sectorBlocks[target] == UNREACHED) {
+                    reached[reachedCount++] = target;
+                }
+
+                // A sector can be pushed at most twice, once per block count.
+                sectorBlocks[target] = targetBlocks;
+                stack[stackSize++]   = target;
+            }
+        }
+
+        return reachedCount;
+    }
+
+    // Valid until the next call to propagate().
+    public boolean isReached(Sector sector) {
+        return sectorBlocks[sector.getNumber()] != UNREACHED;
+    }
+
+    public List<Sector> sectorsReached(Sector origin) {
+        int          count   = propagate(origin);
+        List<Sector> sectors = new ArrayList<Sector>(count);
+
+        for (int i = 0; i < count; ++i) {
+            sectors.add(this.sectors.get(reached[i]));
+        }
+
+        return sectors;
+    }
+}
@@ -0,0 +1,121 @@
+package name.kugelman.john.kdoom.model;
+
+import java.util.*;
+
+import static java.lang.Math.*;
+
+// A uniform grid over a level for finding the items whose bounding boxes meet
+// a rectangle, like the engine's blockmap but for any kind of item. Each item
+// is listed in every cell its box touches, in compressed sparse row form: the
+// items in cell c are cellItems[cellOffsets[c]] to cellItems[cellOffsets[c + 1] - 1].
+//
+// The grid is immutable and queries allocate their own work space, so it can
+// be shared between threads.
+public class SpatialGrid<T> {
+    private List<T> items;
+    private int[]   minXs, minYs, maxXs, maxYs;
+
+    private int     cellSize;
+    private int     left, bottom;
+    private int     columns, rows;
+    private int[]   cellOffsets;
+    private int[]   cellItems;
+
+    // Item i has the box from (minXs[i], minYs[i]) to (maxXs[i], maxYs[i]).
+    SpatialGrid(List<T> items, int[] minXs, int[] minYs, int[] maxXs, int[] maxYs, int cellSize) {
+        this.items    = items;
+        this.minXs    = minXs;
+        this.minYs    = minYs;
+        this.maxXs    = maxXs;
+        this.maxYs    = maxYs;
+        this.cellSize = cellSize;
+
+        int right = Integer.MIN_VALUE, top = Integer.MIN_VALUE;
+
+        left = bottom = Integer.MAX_VALUE;
+
+        for (int i = 0; i < items.size(); ++i) {
+            left   = min(left,   minXs[i]);
+            bottom = min(bottom, minYs[i]);
+            right  = max(right,  maxXs[i]);
+            top    = max(top,    maxYs[i]);
+        }
+
+        if (items.isEmpty()) {
+            left = bottom = right = top = 0;
+        }
+
+        columns     = (right - left)   / cellSize + 1;
+        rows        = (top   - bottom) / cellSize + 1;
+        cellOffsets = new int[columns * rows + 1];
+
+        // Count the items in each cell...
+        for (int i = 0; i < items.size(); ++i) {
+            for (int row = row(minYs[i]); row <= row(maxYs[i]); ++row) {
+                for (int column = column(minXs[i]); column <= column(maxXs[i]); ++column) {
+                    ++cellOffsets[row * columns + column + 1];
+                }
+            }
+        }
+
+        for (int cell = 0; cell < columns * rows; ++cell) {
+            cellOffsets[cell + 1] += cellOffsets[cell];
+        }
+
+        // ...then fill them in.
+        int[] nextItems = Arrays.copyOf(cellOffsets, columns * rows);
+
+        cellItems = new int[cellOffsets[columns * rows]];
+
+        for (int i = 0; i < items.size(); ++i) {
+            for (int row = row(minYs[i]); row <= row(maxYs[i]); ++row) {
+                for (int column = column(minXs[i]); column <= column(maxXs[i]); ++column) {
+                    cellItems[nextItems[row * columns + column]++] = i;
+                }
+            }
+        }
+    }
+
+    private int column(int x) {
+        return min(columns - 1, max(0, (x - left) / cellSize));
+    }
+
+    private int row(int y) {
+        return min(rows - 1, max(0, (y - bottom) / cellSize));
+    }
+
+
+    // The items whose boxes meet the rectangle, in their original order.
+    public List<T> query(int minX, int minY, int maxX, int maxY) {
+        if (items.isEmpty() || maxX < left || maxY < bottom
+         || minX > left   + columns * cellSize
+         || minY > bottom + rows    * cellSize)
+        {
+            return Collections.emptyList();
+        }
+
+        BitSet found = new BitSet(items.size());
+
+        for (int row = row(minY); row <= row(maxY); ++row) {
+            for (int column = column(minX); column <= column(maxX); ++column) {
+                int cell = row * columns + column;
+
+                for (int j = cellOffsets[cell]; j < cellOffsets[cell + 1]; ++j) {
+                    int i = cellItems[j];
+
+                    if (minXs[i] <= maxX && maxXs[i] >= minX && minYs[i] <= maxY && maxYs[i] >= minY) {
+                        found.set(i);
+                    }
+                }
+            }
+        }
+
+        List<T> result = new ArrayList<T>(found.cardinality());
+
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            result.add(items.get(i));
+        }
+
+        return result;
+    }
+}
@@ -77,6 +77,31 @@ public class Sprite {
         frames.put(name, new Frame(name, patch, isMirrored));
     }
 
+    // Every sprite frame lump between S_START and S_END, or SS_START and SS_END
+    // as PWADs often have it, by name. Each file is searched, in load order, so
+    // PWADs replace the IWAD's frames. Empty if the WAD has no sprites.
+    public static SortedMap<String, Patch> patches() throws IOException {
+        SortedMap<String, Patch> patches = new TreeMap<String, Patch>();
+
+        for (WadFile wadFile: Resources.getWad().wadFiles()) {
+            boolean isInSprites = false;
+
+            for (Lump lump: wadFile.lumps()) {
+                if (lump.getName().matches("S?S_START")) {
+                    isInSprites = true;
+                }
+                else if (lump.getName().matches("S?S_END")) {
+                    isInSprites = false;
+                }
+                else if (isInSprites && lump.getName().matches("....([A-Z][0-8])+")) {
+                    patches.put(lump.getName(), new Patch(lump));
+                }
+            }
+        }
+
+        return Collections.unmodifiableSortedMap(patches);
+    }
+
 
     public String getName() {
         return name;
@@ -182,7 +207,6 @@ public class Sprite {
             Thread              thread      = null;
             ColorModel          colorModel  = ColorModel.getRGBdefault();
             List<Frame>         frames      = getFrames(frameSequence);
-            BufferedImage       buffer      = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
             int[]               pixels      = new int[size.width * size.height];
 
             public void addConsumer(ImageConsumer consumer) {
@@ -210,6 +234,8 @@ public class Sprite {
                                     }
                                 }
 
+                                int[] colors = IndexedImage.colorsOf(Resources.getPalette().getColorModel());
+
                                 for (int i = 0; !isInterrupted(); i = (i + 1) % frames.size()) {
                                     Frame frame = frames.get(i);
 
@@ -217,28 +243,13 @@ public class Sprite {
                                         continue;
                                     }
 
-                                    // Reset buffer to all transparent.
-                                    Arrays.fill(pixels, 0);
-                                    buffer.setRGB(0, 0, size.width, size.height, pixels, 0, size.width);
-
-                                    // Draw frame onto buffer.
-                                    AffineTransform transform = new AffineTransform();
-
-                                    if (!isHanging) {
-                                        transform.translate(0, size.height - frame.patch.getSize().height);
-                                    }
+                                    // Clear to transparent and draw the frame straight
+                                    // into the pixels sent to consumers.
+                                    IndexedImage image = frame.patch.getIndexedImage();
+                                    int          top   = isHanging ? 0 : size.height - image.getHeight();
 
-                                    if (frame.isMirrored) {
-                                        transform.translate(frame.patch.getSize().width, 0);
-                                        transform.scale    (-1, 1);
-                                    }
-
-                                    Graphics2D graphics = buffer.createGraphics();
-                                    graphics.drawImage(frame.patch.getImage(), transform, null);
-                                    graphics.dispose();
-
-                                    // Get pixels from buffer.
-                                    buffer.getRGB(0, 0, size.width, size.height, pixels, 0, size.width);
+                                    Arrays.fill(pixels, 0);
+                                    image.drawOnto(pixels, size.width, 0, top, frame.isMirrored, colors);
 
                                     // Send pixels to consumers.
                                     synchronized (consumers) {
@@ -16,6 +16,8 @@ public class Texture {
     List<Short> patchNumbers;
     List<Point> patchOrigins;
 
+    private IndexedImage indexedImage;
+
     Texture(String name, Dimension size) {
         this.name         = name;
         this.size         = size;
@@ -48,24 +50,44 @@ public class Texture {
     }
 
 
+    // Shared through the ImageCache; do not draw on the result.
     public BufferedImage getImage() throws IOException {
-        BufferedImage image    = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
-        Graphics      graphics = image.createGraphics();
-
-        for (int i = 0; i < patchNumbers.size(); ++i) {
-            final Patch patch  = Resources.patches().get(patchNumbers.get(i));
-            final Point origin = patchOrigins.get(i);
+        return getImage(Resources.getPalette().getActivePalette());
+    }
 
-            if (patch == null) {
-                continue;
-            }
+    public BufferedImage getImage(int palette) throws IOException {
+        BufferedImage image = ImageCache.getShared().get(this, palette);
 
-            graphics.drawImage(patch.getImage(), origin.x, origin.y, null);
+        if (image == null) {
+            image = getIndexedImage().toImage(Resources.getPalette().getColors(palette));
+            ImageCache.getShared().put(this, palette, image);
         }
 
         return image;
     }
 
+    // The patches composited as palette indices, built once and kept so that
+    // images in other palettes or light levels are a single lookup pass.
+    public synchronized IndexedImage getIndexedImage() throws IOException {
+        if (indexedImage == null) {
+            indexedImage = new IndexedImage(size.width, size.height);
+
+            for (int i = 0; i < patchNumbers.size(); ++i) {
+                // Unboxed, or the call would resolve to Map.get(Object).
+                Patch patch  = Resources.patches().get((short) patchNumbers.get(i));
+                Point origin = patchOrigins.get(i);
+
+                if (patch == null) {
+                    continue;
+                }
+
+                patch.getIndexedImage().drawOnto(indexedImage, origin.x, origin.y);
+            }
+        }
+
+        return indexedImage;
+    }
+
 
     @Override
     public String toString() {
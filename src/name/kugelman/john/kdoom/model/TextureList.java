@@ -69,6 +69,17 @@ public class TextureList extends AbstractMap<String, Texture> implements SortedM
         return textures.entrySet();
     }
 
+    // AbstractMap would otherwise search the entry set linearly.
+    @Override
+    public Texture get(Object key) {
+        return textures.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return textures.containsKey(key);
+    }
+
 
     // Implementation of SortedMap
 
@@ -0,0 +1,526 @@
+package name.kugelman.john.kdoom.model;
+
+import java.util.*;
+
+import static java.lang.Math.*;
+
+// Ear-clipping triangulation of a sector's traced regions. Regions nested an
+// odd number of levels deep are holes. Each is assigned to the smallest region
+// containing it and spliced into it with a bridge edge, and the resulting
+// weakly simple polygon is clipped into triangles. Output is a flat array of
+// vertex numbers, three per triangle, all wound counter-clockwise.
+//
+// Doom maps are not always tidy, so degenerate input never stops the clipping:
+// collinear corners are dropped and, if no ear can be found, one is forced.
+class Triangulator {
+    private static final int[] NO_TRIANGLES = new int[0];
+
+    // A ring of polygon corners. Arrays grow as holes are spliced in.
+    private int[] vertices;
+    private int[] xs, ys;
+    private int[] nexts, prevs;
+    private int   count;
+
+    // Which region each corner came from, and the ring each region has been
+    // spliced into.
+    private int[] rings;
+    private int[] ringParents;
+
+    private int[] triangles;
+    private int   triangleCount;
+
+    static int[] triangulate(Collection<List<Side>> additiveRegions, Collection<List<Side>> subtractiveRegions) {
+        if (additiveRegions.isEmpty()) {
+            return NO_TRIANGLES;
+        }
+
+        return new Triangulator().run(additiveRegions, subtractiveRegions);
+    }
+
+    private Triangulator() {
+        vertices    = new int[16];
+        xs          = new int[16];
+        ys          = new int[16];
+        nexts       = new int[16];
+        prevs       = new int[16];
+        rings       = new int[16];
+        ringParents = new int[4];
+        triangles   = new int[48];
+    }
+
+    private int[] run(Collection<List<Side>> additiveRegions, Collection<List<Side>> subtractiveRegions) {
+        List<List<Side>> regions = new ArrayList<List<Side>>(additiveRegions);
+
+        regions.addAll(subtractiveRegions);
+
+        // Sector shapes fill by the even-odd rule, so a region inside an odd
+        // number of others is a hole however it was traced, and a region
+        // inside a hole is filled again. Each hole goes to the smallest region
+        // around it. Of two identical regions the later is taken to be inside.
+        int    regionCount = regions.size();
+        long[] areas       = new long[regionCount];
+        int[]  depths      = new int [regionCount];
+        int[]  parents     = new int [regionCount];
+
+        for (int i = 0; i < regionCount; ++i) {
+            areas  [i] = abs(signedArea(regions.get(i)));
+            parents[i] = -1;
+        }
+
+        for (int i = 0; i < regionCount; ++i) {
+            for (int j = 0; j < regionCount; ++j) {
+                if (j == i || areas[j] < areas[i] || (areas[j] == areas[i] && j > i)
+                 || !isInside(regions.get(i), regions.get(j)))
+                {
+                    continue;
+                }
+
+                ++depths[i];
+
+                if (parents[i] < 0 || areas[j] < areas[parents[i]]) {
+                    parents[i] = j;
+                }
+            }
+        }
+
+        List<List<Side>>       outers     = new ArrayList<List<Side>>();
+        List<List<List<Side>>> outerHoles = new ArrayList<List<List<Side>>>();
+        int[]                  outerFor   = new int[regionCount];
+
+        for (int i = 0; i < regionCount; ++i) {
+            outerFor[i] = depths[i] % 2 == 0 ? outers.size() : -1;
+
+            if (depths[i] % 2 == 0) {
+                outers    .add(regions.get(i));
+                outerHoles.add(new ArrayList<List<Side>>());
+            }
+        }
+
+        // Regions that overlap without nesting can leave a hole whose smallest
+        // surrounding region is another hole. It is dropped.
+        for (int i = 0; i < regionCount; ++i) {
+            if (depths[i] % 2 == 1 && outerFor[parents[i]] >= 0) {
+                outerHoles.get(outerFor[parents[i]]).add(regions.get(i));
+            }
+        }
+
+        for (int i = 0; i < outers.size(); ++i) {
+            triangulate(outers.get(i), outerHoles.get(i));
+        }
+
+        return Arrays.copyOf(triangles, triangleCount * 3);
+    }
+
+    private void triangulate(List<Side> outer, List<List<Side>> holes) {
+        count = 0;
+
+        int start = addRing(outer, true, 0);
+
+        if (start < 0) {
+            return;
+        }
+
+        List<Integer> holeStarts = new ArrayList<Integer>();
+
+        for (List<Side> hole: holes) {
+            // A hole cancelling the whole region leaves nothing to fill.
+            if (abs(signedArea(hole)) == abs(signedArea(outer))) {
+                return;
+            }
+
+            int holeStart = addRing(hole, false, holeStarts.size() + 1);
+
+            if (holeStart >= 0) {
+                holeStarts.add(holeStart);
+            }
+        }
+
+        // Splice each hole into the outer ring, or into another hole that will
+        // be spliced in later, through a bridge to the nearest corner it can
+        // see. Touching holes may only see each other, hence the repeated passes.
+        boolean isProgressing = true;
+
+        while (!holeStarts.isEmpty() && isProgressing) {
+            isProgressing = false;
+
+            for (Iterator<Integer> i = holeStarts.iterator(); i.hasNext(); ) {
+                if (spliceHole(i.next())) {
+                    i.remove();
+                    isProgressing = true;
+                }
+            }
+        }
+
+        clipEars(start);
+    }
+
+
+    // Ring building
+
+    // Adds a region's corners as a ring with the sector on its left: wound
+    // counter-clockwise for an outer region, clockwise for a hole. Returns a
+    // corner of the ring, or -1 if the region has no area.
+    private int addRing(List<Side> region, boolean isOuter, int ring) {
+        long area = signedArea(region);
+
+        if (area == 0 || region.size() < 3) {
+            return -1;
+        }
+
+        boolean isReversed = (area > 0) != isOuter;
+        int     first      = count;
+
+        for (int i = 0; i < region.size(); ++i) {
+            Side   side   = region.get(isReversed ? region.size() - 1 - i : i);
+            Vertex vertex = isReversed ? side.getEnd() : side.getStart();
+
+            addCorner(vertex.getNumber() & 0xFFFF, vertex.getX(), vertex.getY(), ring);
+        }
+
+        for (int i = first; i < count; ++i) {
+            nexts[i] = i + 1 < count ? i + 1 : first;
+            prevs[i] = i > first     ? i - 1 : count - 1;
+        }
+
+        ringParents = ringParents.length > ring ? ringParents : Arrays.copyOf(ringParents, ring * 2 + 1);
+        ringParents[ring] = ring;
+
+        return first;
+    }
+
+    private int addCorner(int vertex, int x, int y, int ring) {
+        if (count == vertices.length) {
+            vertices = Arrays.copyOf(vertices, count * 2);
+            xs       = Arrays.copyOf(xs,       count * 2);
+            ys       = Arrays.copyOf(ys,       count * 2);
+            nexts    = Arrays.copyOf(nexts,    count * 2);
+            prevs    = Arrays.copyOf(prevs,    count * 2);
+            rings    = Arrays.copyOf(rings,    count * 2);
+        }
+
+        vertices[count] = vertex;
+        xs      [count] = x;
+        ys      [count] = y;
+        rings   [count] = ring;
+
+        return count++;
+    }
+
+    private int ringOf(int corner) {
+        int ring = rings[corner];
+
+        while (ringParents[ring] != ring) {
+            ring = ringParents[ring];
+        }
+
+        return ring;
+    }
+
+    // Links the hole into whichever ring its bridge reaches, through a pair of
+    // coincident bridge edges.
+    private boolean spliceHole(int holeStart) {
+        int holeRing = ringOf(holeStart);
+        int hole     = holeStart;
+
+        do {
+            int bridge = findBridge(hole, holeRing);
+
+            if (bridge >= 0) {
+                int holeCopy   = addCorner(vertices[hole],   xs[hole],   ys[hole],   rings[hole]);
+                int bridgeCopy = addCorner(vertices[bridge], xs[bridge], ys[bridge], rings[bridge]);
+
+                int holePrev   = prevs[hole];
+                int bridgeNext = nexts[bridge];
+
+                // bridge -> hole -> ... -> holePrev -> holeCopy -> bridgeCopy -> bridgeNext
+                nexts[bridge]     = hole;
+                prevs[hole]       = bridge;
+                nexts[holePrev]   = holeCopy;
+                prevs[holeCopy]   = holePrev;
+                nexts[holeCopy]   = bridgeCopy;
+                prevs[bridgeCopy] = holeCopy;
+                nexts[bridgeCopy] = bridgeNext;
+                prevs[bridgeNext] = bridgeCopy;
+
+                ringParents[holeRing] = ringOf(bridge);
+
+                return true;
+            }
+
+            hole = nexts[hole];
+        } while (hole != holeStart);
+
+        return false;
+    }
+
+    // Finds the nearest corner of another ring that the hole corner can be
+    // joined to without the bridge crossing an edge or passing through a corner.
+    private int findBridge(int hole, int holeRing) {
+        long[] candidates     = new long[count];
+        int    candidateCount = 0;
+
+        for (int corner = 0; corner < count; ++corner) {
+            if (ringOf(corner) != holeRing) {
+                long xDiff = xs[corner] - xs[hole];
+                long yDiff = ys[corner] - ys[hole];
+
+                candidates[candidateCount++] = (xDiff * xDiff + yDiff * yDiff) << 24 | corner;
+            }
+        }
+
+        Arrays.sort(candidates, 0, candidateCount);
+
+        for (int i = 0; i < candidateCount; ++i) {
+            int corner = (int) (candidates[i] & 0xFFFFFF);
+
+            if (isLocallyInside(hole, corner) && isLocallyInside(corner, hole) && isClear(hole, corner)) {
+                return corner;
+            }
+        }
+
+        return -1;
+    }
+
+    // Whether a diagonal from the corner towards the point heads into the
+    // sector, which is on the left of every ring.
+    private boolean isLocallyInside(int corner, int point) {
+        int prev = prevs[corner];
+        int next = nexts[corner];
+
+        if (isSamePoint(corner, point)) {
+            return true;
+        }
+
+        if (cross(prev, corner, next) > 0) {
+            return cross(corner, next, point) > 0 && cross(prev, corner, point) > 0;
+        }
+        else {
+            return cross(corner, next, point) > 0 || cross(prev, corner, point) > 0;
+        }
+    }
+
+    // Whether the segment between the corners crosses no edge and passes
+    // through no other corner.
+    private boolean isClear(int a, int b) {
+        for (int corner = 0; corner < count; ++corner) {
+            int next = nexts[corner];
+
+            if (isSamePoint(corner, a) || isSamePoint(corner, b)) {
+                continue;
+            }
+
+            // Corner lying on the segment.
+            if (cross(a, b, corner) == 0
+             && min(xs[a], xs[b]) <= xs[corner] && xs[corner] <= max(xs[a], xs[b])
+             && min(ys[a], ys[b]) <= ys[corner] && ys[corner] <= max(ys[a], ys[b]))
+            {
+                return false;
+            }
+
+            if (isSamePoint(next, a) || isSamePoint(next, b)) {
+                continue;
+            }
+
+            // Edge properly crossing the segment.
+            if (signum(cross(a, b, corner)) * signum(cross(a, b, next)) < 0
+             && signum(cross(corner, next, a)) * signum(cross(corner, next, b)) < 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    // Ear clipping
+
+    private void clipEars(int start) {
+        int remaining = 0;
+        int corner    = start;
+
+        do {
+            ++remaining;
+            corner = nexts[corner];
+        } while (corner != start);
+
+        int failures = 0;
+
+        while (remaining > 3) {
+            int prev = prevs[corner];
+            int next = nexts[corner];
+
+            if (isEar(prev, corner, next)) {
+                addTriangle(prev, corner, next);
+                unlink(corner);
+
+                --remaining;
+                failures = 0;
+                corner   = next;
+                continue;
+            }
+
+            corner = next;
+
+            // Gone all the way round without finding an ear.
+            if (++failures >= remaining) {
+                corner = forceClip(corner);
+                --remaining;
+                failures = 0;
+            }
+        }
+
+        if (cross(prevs[corner], corner, nexts[corner]) > 0) {
+            addTriangle(prevs[corner], corner, nexts[corner]);
+        }
+    }
+
+    private boolean isEar(int prev, int corner, int next) {
+        if (cross(prev, corner, next) <= 0) {
+            return false;
+        }
+
+        // Only reflex corners can lie inside a convex corner's triangle.
+        for (int other = nexts[next]; other != prev; other = nexts[other]) {
+            if (isSamePoint(other, prev) || isSamePoint(other, corner) || isSamePoint(other, next)) {
+                continue;
+            }
+
+            if (isReflex(other)
+             && isInTriangle(xs[prev], ys[prev], xs[corner], ys[corner], xs[next], ys[next], xs[other], ys[other]))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Drops a collinear corner if there is one, otherwise clips the given corner
+    // regardless. Returns the corner to continue from.
+    private int forceClip(int corner) {
+        int other = corner;
+
+        do {
+            if (cross(prevs[other], other, nexts[other]) == 0) {
+                int next = nexts[other];
+
+                unlink(other);
+                return next;
+            }
+
+            other = nexts[other];
+        } while (other != corner);
+
+        int next = nexts[corner];
+
+        if (cross(prevs[corner], corner, next) > 0) {
+            addTriangle(prevs[corner], corner, next);
+        }
+
+        unlink(corner);
+        return next;
+    }
+
+    private void unlink(int corner) {
+        nexts[prevs[corner]] = nexts[corner];
+        prevs[nexts[corner]] = prevs[corner];
+    }
+
+    private void addTriangle(int a, int b, int c) {
+        if ((triangleCount + 1) * 3 > triangles.length) {
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
+        }
+
+        triangles[triangleCount * 3    ] = vertices[a];
+        triangles[triangleCount * 3 + 1] = vertices[b];
+        triangles[triangleCount * 3 + 2] = vertices[c];
+
+        ++triangleCount;
+    }
+
+
+    // Geometry
+
+    private long cross(int a, int b, int c) {
+        return (long) (xs[b] - xs[a]) * (ys[c] - ys[a]) - (long) (ys[b] - ys[a]) * (xs[c] - xs[a]);
+    }
+
+    private boolean isReflex(int corner) {
+        return cross(prevs[corner], corner, nexts[corner]) <= 0;
+    }
+
+    private boolean isSamePoint(int a, int b) {
+        return xs[a] == xs[b] && ys[a] == ys[b];
+    }
+
+    private static boolean isInTriangle(double ax, double ay, double bx, double by, double cx, double cy,
+                                        double px, double py)
+    {
+        double ab = (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+        double bc = (cx - bx) * (py - by) - (cy - by) * (px - bx);
+        double ca = (ax - cx) * (py - cy) - (ay - cy) * (px - cx);
+
+        return (ab >= 0 && bc >= 0 && ca >= 0) || (ab <= 0 && bc <= 0 && ca <= 0);
+    }
+
+    // Twice the signed area, positive if counter-clockwise.
+    private static long signedArea(List<Side> region) {
+        long area = 0;
+
+        for (Side side: region) {
+            area += (long) side.getStart().getX() * side.getEnd().getY()
+                  - (long) side.getEnd  ().getX() * side.getStart().getY();
+        }
+
+        return area;
+    }
+
+    // Holes often share corners and edges with the region around them, so test
+    // the first corner that is not on the outer region's boundary. A hole with
+    // every corner on the boundary retraces the outer region's outline.
+    private static boolean isInside(List<Side> hole, List<Side> outer) {
+        for (Side side: hole) {
+            int x = side.getStart().getX(), y = side.getStart().getY();
+
+            if (!isOnBoundary(outer, x, y)) {
+                return contains(outer, x, y);
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isOnBoundary(List<Side> region, int x, int y) {
+        for (Side side: region) {
+            int startX = side.getStart().getX(), startY = side.getStart().getY();
+            int endX   = side.getEnd  ().getX(), endY   = side.getEnd  ().getY();
+
+            if ((long) (endX - startX) * (y - startY) == (long) (endY - startY) * (x - startX)
+             && min(startX, endX) <= x && x <= max(startX, endX)
+             && min(startY, endY) <= y && y <= max(startY, endY))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean contains(List<Side> region, int x, int y) {
+        boolean isInside = false;
+
+        for (Side side: region) {
+            int startX = side.getStart().getX(), startY = side.getStart().getY();
+            int endX   = side.getEnd  ().getX(), endY   = side.getEnd  ().getY();
+
+            if ((startY > y) != (endY > y)
+             && x < startX + (double) (y - startY) * (endX - startX) / (endY - startY))
+            {
+                isInside = !isInside;
+            }
+        }
+
+        return isInside;
+    }
+}
@@ -0,0 +1,426 @@
+package name.kugelman.john.kdoom.tools;
+
+import java.awt.image.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.*;
+import java.util.zip.*;
+import javax.imageio.*;
+import javax.sound.sampled.*;
+
+import com.sun.net.httpserver.*;
+
+import name.kugelman.john.kdoom.file.*;
+import name.kugelman.john.kdoom.model.*;
+
+// Serves the loaded resources over HTTP on the loopback interface:
+//
+//   /tiles/<level>/<zoom>/<x>/<y>.png  level tiles, as TileGenerator writes
+//   /textures/<name>.png               composited textures
+//   /flats/<name>.png                  flats
+//   /sounds/<name>.wav                 sounds
+//
+// Encoded responses are kept in a least recently used cache bounded by size.
+// ETags are derived from the checksums of the lumps each asset is built from,
+// so a client revalidating an asset gets a 304 without it being rendered.
+public class AssetServer {
+    public static final int  DEFAULT_PORT           = 8080;
+    public static final long DEFAULT_CACHE_CAPACITY = 32L << 20;
+
+    // Bump whenever rendering or encoding changes, to change every ETag.
+    private static final int VERSION = 1;
+
+    private static final Pattern TILE    = Pattern.compile("/tiles/(\\w+)/(\\d+)/(\\d+)/(\\d+)\\.png");
+    private static final Pattern TEXTURE = Pattern.compile("/textures/([^/]+)\\.png");
+    private static final Pattern FLAT    = Pattern.compile("/flats/([^/]+)\\.png");
+    private static final Pattern SOUND   = Pattern.compile("/sounds/([^/]+)\\.wav");
+
+    // Headers and body go out in separate writes, and with Nagle's algorithm
+    // on the body waits for the client's delayed ACK, adding ~40ms to every
+    // response. Must be set before the first HttpServer is created.
+    static {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private static class Response {
+        String contentType;
+        String eTag;
+        byte[] body;
+
+        Response(String contentType, String eTag, byte[] body) {
+            this.contentType = contentType;
+            this.eTag        = eTag;
+            this.body        = body;
+        }
+    }
+
+
+    private HttpServer                      server;
+    private ExecutorService                 executor;
+    private TileGenerator                   tileGenerator;
+    private LinkedHashMap<String, Response> responses;
+    private long                            cacheCapacity;
+    private long                            cacheSize;
+    private Map<Lump, Integer>              checksums;
+
+    // Handles requests on a pool of threadCount threads.
+    public AssetServer(int port, int threadCount, long cacheCapacity) throws IOException {
+        this.server        = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor      = Executors.newFixedThreadPool(threadCount);
+        this.tileGenerator = new TileGenerator(TileGenerator.DEFAULT_MIN_SCALE);
+        this.responses     = new LinkedHashMap<String, Response>(16, 0.75f, true);
+        this.cacheCapacity = cacheCapacity;
+        this.checksums     = new ConcurrentHashMap<Lump, Integer>();
+
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                }
+                finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+
+    private void respond(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path   = exchange.getRequestURI().getPath();
+
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            sendError(exchange, 405, method + " not allowed.");
+            return;
+        }
+
+        try {
+            String eTag = getETag(path);
+
+            if (eTag == null) {
+                sendError(exchange, 404, path + " not found.");
+                return;
+            }
+
+            Headers headers = exchange.getResponseHeaders();
+
+            if (isMatch(exchange.getRequestHeaders().get("If-None-Match"), eTag)) {
+                headers.set("ETag", eTag);
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            Response response = getResponse(path, eTag);
+
+            if (response == null) {
+                sendError(exchange, 404, path + " is empty.");
+                return;
+            }
+
+            headers.set("Content-Type",  response.contentType);
+            headers.set("ETag",          eTag);
+            headers.set("Cache-Control", "no-cache");
+
+            if (method.equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, response.body.length);
+            exchange.getResponseBody().write(response.body);
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+            sendError(exchange, 500, exception.getLocalizedMessage());
+        }
+        catch (RuntimeException exception) {
+            exception.printStackTrace();
+            sendError(exchange, 500, exception.toString());
+        }
+    }
+
+    // Whether If-None-Match headers name the ETag. Each may list several tags
+    // or be *. GET and HEAD compare weakly, so W/ prefixes are ignored.
+    private static boolean isMatch(List<String> ifNoneMatches, String eTag) {
+        if (ifNoneMatches == null) {
+            return false;
+        }
+
+        for (String ifNoneMatch: ifNoneMatches) {
+            for (String tag: ifNoneMatch.split(",")) {
+                tag = tag.trim();
+
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+
+                if (tag.equals("*") || tag.equals(eTag)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes("UTF-8");
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+
+    // ETags
+
+    // The ETag for a path, or null if there is nothing there.
+    private String getETag(String path) throws IOException {
+        List<Lump> lumps = sourceLumps(path);
+
+        if (lumps == null) {
+            return null;
+        }
+
+        CRC32 crc32 = new CRC32();
+
+        crc32.update(VERSION);
+        crc32.update(path.getBytes("UTF-8"));
+
+        for (Lump lump: lumps) {
+            int checksum = getChecksum(lump);
+
+            crc32.update(new byte[] { (byte) (checksum >> 24), (byte) (checksum >> 16),
+                                      (byte) (checksum >> 8),  (byte) checksum });
+        }
+
+        return "\"" + Long.toHexString(crc32.getValue()) + "\"";
+    }
+
+    // Lumps do not change while the server runs, so each is read once.
+    private int getChecksum(Lump lump) throws IOException {
+        Integer checksum = checksums.get(lump);
+
+        if (checksum == null) {
+            checksum = lump.getChecksum();
+            checksums.put(lump, checksum);
+        }
+
+        return checksum;
+    }
+
+    // The lumps the asset at a path is built from, or null if there is none.
+    private List<Lump> sourceLumps(String path) throws IOException {
+        Wad        wad   = Resources.getWad();
+        List<Lump> lumps = new ArrayList<Lump>();
+        Matcher    matcher;
+
+        if ((matcher = TILE.matcher(path)).matches()) {
+            Level level = Resources.levels().get(matcher.group(1).toUpperCase());
+            Lump  lump  = wad.lookup(matcher.group(1).toUpperCase());
+
+            if (level == null || lump == null) {
+                return null;
+            }
+
+            lumps.addAll(lump.getWadFile().lumpGroup(lump, 11));
+            lumps.add   (wad.lump("PLAYPAL"));
+        }
+        else if ((matcher = TEXTURE.matcher(path)).matches()) {
+            Texture texture = Resources.textures().get(matcher.group(1).toUpperCase());
+
+            if (texture == null) {
+                return null;
+            }
+
+            lumps.add(wad.lump("PLAYPAL"));
+            lumps.add(wad.lump("PNAMES"));
+            lumps.add(wad.lump("TEXTURE1"));
+
+            if (wad.lookup("TEXTURE2") != null) {
+                lumps.add(wad.lookup("TEXTURE2"));
+            }
+
+            for (short patchNumber: texture.patchNumbers()) {
+                Patch patch = Resources.patches().get(patchNumber);
+
+                if (patch != null) {
+                    lumps.add(wad.lump(patch.getName()));
+                }
+            }
+        }
+        else if ((matcher = FLAT.matcher(path)).matches()) {
+            if (Resources.flats().get(matcher.group(1).toUpperCase()) == null) {
+                return null;
+            }
+
+            lumps.add(wad.lump("PLAYPAL"));
+            lumps.add(wad.lump(matcher.group(1).toUpperCase()));
+        }
+        else if ((matcher = SOUND.matcher(path)).matches()) {
+            if (Resources.sounds().get(matcher.group(1).toUpperCase()) == null) {
+                return null;
+            }
+
+            lumps.add(wad.lump(matcher.group(1).toUpperCase()));
+        }
+        else {
+            return null;
+        }
+
+        return lumps;
+    }
+
+
+    // Responses
+
+    private Response getResponse(String path, String eTag) throws IOException {
+        Response response;
+
+        synchronized (responses) {
+            response = responses.get(path);
+        }
+
+        if (response == null) {
+            // Two threads may both encode the same asset; the second simply
+            // replaces the first in the cache.
+            response = createResponse(path, eTag);
+
+            if (response != null) {
+                cache(path, response);
+            }
+        }
+
+        return response;
+    }
+
+    private Response createResponse(String path, String eTag) throws IOException {
+        Matcher matcher;
+
+        if ((matcher = TILE.matcher(path)).matches()) {
+            BufferedImage tile = tileGenerator.renderTile(Resources.levels().get(matcher.group(1).toUpperCase()),
+                                                          Integer.parseInt(matcher.group(2)),
+                                                          Integer.parseInt(matcher.group(3)),
+                                                          Integer.parseInt(matcher.group(4)));
+
+            return tile == null ? null : new Response("image/png", eTag, encode(tile));
+        }
+        else if ((matcher = TEXTURE.matcher(path)).matches()) {
+            Texture texture = Resources.textures().get(matcher.group(1).toUpperCase());
+
+            return new Response("image/png", eTag, encode(texture.getImage()));
+        }
+        else if ((matcher = FLAT.matcher(path)).matches()) {
+            Flat flat = Resources.flats().get(matcher.group(1).toUpperCase());
+
+            return new Response("image/png", eTag, encode(flat.getImage()));
+        }
+        else if ((matcher = SOUND.matcher(path)).matches()) {
+            Sound                 sound = Resources.sounds().get(matcher.group(1).toUpperCase());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+            AudioSystem.write(sound.getAudioInputStream(), AudioFileFormat.Type.WAVE, bytes);
+
+            return new Response("audio/wav", eTag, bytes.toByteArray());
+        }
+
+        return null;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        ImageIO.write(image, "png", bytes);
+
+        return bytes.toByteArray();
+    }
+
+    // Whether the response for a path is in the cache, for AssetServerCheck.
+    boolean isCached(String path) {
+        synchronized (responses) {
+            return responses.containsKey(path);
+        }
+    }
+
+    // Adds a response, evicting the least recently used ones to stay within
+    // the cache capacity.
+    private void cache(String path, Response response) {
+        synchronized (responses) {
+            Response previous = responses.put(path, response);
+
+            if (previous != null) {
+                cacheSize -= previous.body.length;
+            }
+
+            cacheSize += response.body.length;
+
+            Iterator<Response> iterator = responses.values().iterator();
+
+            while (cacheSize > cacheCapacity && iterator.hasNext()) {
+                cacheSize -= iterator.next().body.length;
+                iterator.remove();
+            }
+        }
+    }
+
+
+    public static void main(String[] arguments) {
+        if (arguments.length < 1 || arguments.length > 3) {
+            System.err.println("Usage: kdoom <doom.wad> [patch.wad] [port]");
+            System.exit(1);
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            WadFileSet wad  = new WadFileSet(new WadFile(new File(arguments[0])));
+            int        port = DEFAULT_PORT;
+
+            for (int i = 1; i < arguments.length; ++i) {
+                if (arguments[i].matches("\\d+")) {
+                    port = Integer.parseInt(arguments[i]);
+                }
+                else {
+                    wad.addPatch(new WadFile(new File(arguments[i])));
+                }
+            }
+
+            Resources.load(wad);
+
+            AssetServer server = new AssetServer(port, Runtime.getRuntime().availableProcessors() * 2,
+                                                 DEFAULT_CACHE_CAPACITY);
+
+            server.start();
+
+            System.out.println("Serving " + wad + " at http://" + server.getAddress().getHostString() + ":"
+                             + server.getAddress().getPort() + "/");
+        }
+        catch (IllegalArgumentException exception) {
+            System.err.println(exception.getLocalizedMessage());
+            System.exit(1);
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package name.kugelman.john.kdoom.tools;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import name.kugelman.john.kdoom.file.*;
+import name.kugelman.john.kdoom.model.*;
+
+// Starts an AssetServer on a free loopback port and checks its responses for
+// the first asset on each route:
+//
+//   200       the asset, with an ETag and the route's content type
+//   cached    the response is cached, and asking again gets the same body
+//   304       If-None-Match with the ETag, as a weak tag, in a list and as *
+//   200       If-None-Match with some other ETag
+//   404       an asset that is not there
+//
+// Prints each check and exits with status 1 if any failed. For example:
+//
+//   kdoom doom.wad test/BioTech2.wad
+public class AssetServerCheck {
+    private static class Reply {
+        int    status;
+        String eTag;
+        String contentType;
+        byte[] body;
+    }
+
+
+    private AssetServer server;
+    private PrintStream output;
+    private int         failureCount;
+
+    public AssetServerCheck(AssetServer server, PrintStream output) {
+        this.server = server;
+        this.output = output;
+    }
+
+
+    // Returns the number of failed checks.
+    public int run() throws IOException {
+        if (!Resources.levels().isEmpty()) {
+            checkRoute("/tiles/" + Resources.levels().firstKey() + "/0/0/0.png", "image/png",
+                       "/tiles/NOLEVEL/0/0/0.png");
+        }
+
+        if (!Resources.textures().isEmpty()) {
+            checkRoute("/textures/" + Resources.textures().keySet().iterator().next() + ".png", "image/png",
+                       "/textures/NOTEXTURE.png");
+        }
+
+        if (!Resources.flats().isEmpty()) {
+            checkRoute("/flats/" + Resources.flats().keySet().iterator().next() + ".png", "image/png",
+                       "/flats/NOFLAT.png");
+        }
+
+        if (!Resources.sounds().isEmpty()) {
+            checkRoute("/sounds/" + Resources.sounds().keySet().iterator().next() + ".wav", "audio/wav",
+                       "/sounds/NOSOUND.wav");
+        }
+
+        check(get("/nothing/here", null).status == 404, "/nothing/here", "404 for an unknown route");
+
+        return failureCount;
+    }
+
+    private void checkRoute(String path, String contentType, String missingPath) throws IOException {
+        Reply reply = get(path, null);
+
+        check(reply.status == 200 && reply.body.length > 0, path, "200 with a body");
+        check(reply.eTag != null,                           path, "ETag");
+        check(contentType.equals(reply.contentType),        path, "Content-Type " + contentType);
+
+        if (reply.status != 200 || reply.eTag == null) {
+            return;
+        }
+
+        Reply again = get(path, null);
+
+        check(server.isCached(path),                                    path, "cached");
+        check(again.status == 200 && Arrays.equals(again.body, reply.body)
+           && reply.eTag.equals(again.eTag),                            path, "same body and ETag when cached");
+
+        check(get(path, reply.eTag)                   .status == 304, path, "304 for the ETag");
+        check(get(path, "W/" + reply.eTag)            .status == 304, path, "304 for the weak ETag");
+        check(get(path, "\"0\", " + reply.eTag)       .status == 304, path, "304 for the ETag in a list");
+        check(get(path, "*")                          .status == 304, path, "304 for *");
+        check(get(path, "\"0\"")                      .status == 200, path, "200 for another ETag");
+        check(get(missingPath, null)                  .status == 404, missingPath, "404");
+        check(get(missingPath, "*")                   .status == 404, missingPath, "404 for *");
+    }
+
+    private void check(boolean isPassed, String path, String description) {
+        output.println((isPassed ? "ok      " : "FAILED  ") + path + ": " + description);
+
+        if (!isPassed) {
+            ++failureCount;
+        }
+    }
+
+    private Reply get(String path, String ifNoneMatch) throws IOException {
+        InetSocketAddress address = server.getAddress();
+        URL               url;
+
+        try {
+            url = new URI("http", null, address.getHostString(), address.getPort(), path, null, null).toURL();
+        }
+        catch (URISyntaxException exception) {
+            throw new IllegalArgumentException(exception);
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+        try {
+            if (ifNoneMatch != null) {
+                connection.setRequestProperty("If-None-Match", ifNoneMatch);
+            }
+
+            Reply reply = new Reply();
+
+            reply.status      = connection.getResponseCode();
+            reply.eTag        = connection.getHeaderField("ETag");
+            reply.contentType = connection.getContentType();
+            reply.body        = readAll(reply.status >= 400 ? connection.getErrorStream()
+                                                            : connection.getInputStream());
+
+            return reply;
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        if (input == null) {
+            return bytes.toByteArray();
+        }
+
+        try {
+            byte[] buffer = new byte[8192];
+
+            for (int count; (count = input.read(buffer)) >= 0; ) {
+                bytes.write(buffer, 0, count);
+            }
+        }
+        finally {
+            input.close();
+        }
+
+        return bytes.toByteArray();
+    }
+
+
+    public static void main(String[] arguments) {
+        if (arguments.length < 1 || arguments.length > 2) {
+            System.err.println("Usage: kdoom <doom.wad> [patch.wad]");
+            System.exit(1);
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            WadFileSet wad = new WadFileSet(new WadFile(new File(arguments[0])));
+
+            if (arguments.length == 2) {
+                wad.addPatch(new WadFile(new File(arguments[1])));
+            }
+
+            Resources.load(wad);
+
+            AssetServer server = new AssetServer(0, 2, AssetServer.DEFAULT_CACHE_CAPACITY);
+            int         failureCount;
+
+            server.start();
+
+            try {
+                failureCount = new AssetServerCheck(server, System.out).run();
+            }
+            finally {
+                server.stop();
+            }
+
+            System.out.println(failureCount == 0 ? "All checks passed." : failureCount + " checks failed.");
+            System.exit(failureCount == 0 ? 0 : 1);
+        }
+        catch (IllegalArgumentException exception) {
+            System.err.println(exception.getLocalizedMessage());
+            System.exit(1);
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
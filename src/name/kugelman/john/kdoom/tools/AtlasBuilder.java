@@ -0,0 +1,342 @@
+package name.kugelman.john.kdoom.tools;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import javax.imageio.*;
+
+import name.kugelman.john.kdoom.file.*;
+import name.kugelman.john.kdoom.model.*;
+
+import static java.lang.Math.*;
+
+// Packs textures, flats and sprite frames into power-of-two atlas pages.
+// Graphics are decoded to palette indices in parallel, packed with a skyline
+// packer, tallest first, and each page is drawn and written as a PNG in
+// parallel, alongside a text index of where everything went:
+//
+//   page  <number> <file> <width> <height>
+//   <kind> <name> <page> <x> <y> <width> <height> <offset x> <offset y>
+//
+// Offsets are the patch offsets sprites are drawn with, 0 for everything else.
+public class AtlasBuilder {
+    public static final int    DEFAULT_PAGE_SIZE = 2048;
+    public static final int    DEFAULT_PADDING   = 1;
+    public static final String INDEX_FILE        = "atlas.txt";
+
+    public enum Kind {
+        TEXTURE, FLAT, SPRITE;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    public static class Entry {
+        private Kind         kind;
+        private String       name;
+        private IndexedImage image;
+        private Point        offset;
+        private int          page;
+        private Point        location;
+
+        Entry(Kind kind, String name, IndexedImage image, Point offset) {
+            this.kind   = kind;
+            this.name   = name;
+            this.image  = image;
+            this.offset = offset;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public IndexedImage getImage() {
+            return image;
+        }
+
+        public Point getOffset() {
+            return offset;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public Point getLocation() {
+            return location;
+        }
+    }
+
+
+    private int                 pageSize;
+    private int                 padding;
+    private List<Entry>         entries;
+    private List<SkylinePacker> pages;
+
+    public AtlasBuilder() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_PADDING);
+    }
+
+    // Pages are pageSize square at most, except that a graphic too big for one
+    // gets a page of its own. Padding is empty space left between graphics so
+    // filtering does not bleed one into the next.
+    public AtlasBuilder(int pageSize, int padding) {
+        if (Integer.bitCount(pageSize) != 1) {
+            throw new IllegalArgumentException(pageSize + " is not a power of two.");
+        }
+
+        this.pageSize = pageSize;
+        this.padding  = padding;
+        this.entries  = new ArrayList<Entry>();
+        this.pages    = new ArrayList<SkylinePacker>();
+    }
+
+
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    // Pages shrink to the smallest power of two that holds what is on them.
+    public Dimension getPageSize(int page) {
+        SkylinePacker packer = pages.get(page);
+
+        return new Dimension(powerOfTwo(packer.getUsedWidth()), powerOfTwo(packer.getUsedHeight()));
+    }
+
+
+    public void add(Kind kind, String name, IndexedImage image, Point offset) {
+        entries.add(new Entry(kind, name, image, offset));
+    }
+
+    // Adds every texture, flat and sprite frame, decoding them on the executor.
+    public void addResources(ExecutorService executor) throws IOException {
+        List<Kind>                 kinds   = new ArrayList<Kind>();
+        List<String>               names   = new ArrayList<String>();
+        List<Point>                offsets = new ArrayList<Point>();
+        List<Future<IndexedImage>> images  = new ArrayList<Future<IndexedImage>>();
+
+        for (final Texture texture: Resources.textures().values()) {
+            kinds  .add(Kind.TEXTURE);
+            names  .add(texture.getName());
+            offsets.add(new Point());
+            images .add(executor.submit(new Callable<IndexedImage>() {
+                public IndexedImage call() throws IOException {
+                    return texture.getIndexedImage();
+                }
+            }));
+        }
+
+        for (final Flat flat: Resources.flats().values()) {
+            kinds  .add(Kind.FLAT);
+            names  .add(flat.getName());
+            offsets.add(new Point());
+            images .add(executor.submit(new Callable<IndexedImage>() {
+                public IndexedImage call() throws IOException {
+                    return flat.getIndexedImage();
+                }
+            }));
+        }
+
+        for (final Patch patch: Sprite.patches().values()) {
+            kinds  .add(Kind.SPRITE);
+            names  .add(patch.getName());
+            offsets.add(patch.getOffset());
+            images .add(executor.submit(new Callable<IndexedImage>() {
+                public IndexedImage call() throws IOException {
+                    return patch.getIndexedImage();
+                }
+            }));
+        }
+
+        for (int i = 0; i < images.size(); ++i) {
+            add(kinds.get(i), names.get(i), get(images.get(i)), offsets.get(i));
+        }
+    }
+
+
+    // Places every entry, tallest first so rows of similar heights form, on the
+    // first page it fits. Packing is cheap next to decoding and drawing, so it
+    // runs on one thread and is deterministic.
+    public void pack() {
+        List<Entry> sorted = new ArrayList<Entry>(entries);
+
+        Collections.sort(sorted, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                if (a.image.getHeight() != b.image.getHeight()) {
+                    return b.image.getHeight() - a.image.getHeight();
+                }
+
+                return b.image.getWidth() - a.image.getWidth();
+            }
+        });
+
+        pages.clear();
+
+        for (Entry entry: sorted) {
+            int width  = entry.image.getWidth () + padding;
+            int height = entry.image.getHeight() + padding;
+
+            entry.location = null;
+
+            for (entry.page = 0; entry.page < pages.size(); ++entry.page) {
+                entry.location = pages.get(entry.page).add(width, height);
+
+                if (entry.location != null) {
+                    break;
+                }
+            }
+
+            if (entry.location == null) {
+                SkylinePacker page = new SkylinePacker(max(pageSize, powerOfTwo(width)),
+                                                       max(pageSize, powerOfTwo(height)));
+
+                pages.add(page);
+                entry.location = page.add(width, height);
+            }
+        }
+    }
+
+    // Draws one page in ARGB, with everything not covered transparent.
+    public BufferedImage drawPage(int page, int[] colors) {
+        Dimension size   = getPageSize(page);
+        int[]     pixels = new int[size.width * size.height];
+
+        for (Entry entry: entries) {
+            if (entry.page == page) {
+                entry.image.drawOnto(pixels, size.width, entry.location.x, entry.location.y, false, colors);
+            }
+        }
+
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_ARGB);
+
+        image.getRaster().setDataElements(0, 0, size.width, size.height, pixels);
+
+        return image;
+    }
+
+    // Writes atlas<n>.png for each page and the index to the directory.
+    public void write(File directory, ExecutorService executor) throws IOException {
+        final int[]        colors = Resources.getPalette().getColors();
+        List<Future<File>> writes = new ArrayList<Future<File>>();
+
+        for (int page = 0; page < pages.size(); ++page) {
+            final int  pageNumber = page;
+            final File file       = new File(directory, "atlas" + page + ".png");
+
+            writes.add(executor.submit(new Callable<File>() {
+                public File call() throws IOException {
+                    ImageIO.write(drawPage(pageNumber, colors), "png", file);
+                    return file;
+                }
+            }));
+        }
+
+        PrintWriter index = new PrintWriter(new FileWriter(new File(directory, INDEX_FILE)));
+
+        try {
+            for (int page = 0; page < pages.size(); ++page) {
+                Dimension size = getPageSize(page);
+
+                index.println("page " + page + " " + get(writes.get(page)).getName()
+                            + " " + size.width + " " + size.height);
+            }
+
+            for (Entry entry: entries) {
+                index.println(entry.kind + " " + entry.name + " " + entry.page
+                            + " " + entry.location.x       + " " + entry.location.y
+                            + " " + entry.image.getWidth() + " " + entry.image.getHeight()
+                            + " " + entry.offset.x         + " " + entry.offset.y);
+            }
+        }
+        finally {
+            index.close();
+        }
+
+        if (index.checkError()) {
+            throw new IOException("Could not write " + INDEX_FILE + ".");
+        }
+    }
+
+
+    private static int powerOfTwo(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    // Waits for a task, passing on the IOException it failed with.
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException exception) {
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException exception) {
+            if (exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+
+            throw new RuntimeException(exception.getCause());
+        }
+    }
+
+
+    public static void main(String[] arguments) {
+        if (arguments.length < 2 || arguments.length > 3) {
+            System.err.println("Usage: kdoom <doom.wad> [patch.wad] <output directory>");
+            System.exit(1);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        try {
+            WadFileSet wad = new WadFileSet(new WadFile(new File(arguments[0])));
+            File       directory;
+
+            if (arguments.length == 2) {
+                directory = new File(arguments[1]);
+            }
+            else {
+                wad.addPatch(new WadFile(new File(arguments[1])));
+                directory = new File(arguments[2]);
+            }
+
+            Resources.load(wad);
+
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory + ".");
+            }
+
+            AtlasBuilder builder = new AtlasBuilder();
+
+            builder.addResources(executor);
+            builder.pack        ();
+            builder.write       (directory, executor);
+
+            System.out.println(builder.entries().size() + " graphics in " + builder.getPageCount() + " pages.");
+        }
+        catch (IllegalArgumentException exception) {
+            System.err.println(exception.getLocalizedMessage());
+            System.exit(1);
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+            System.exit(-1);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package name.kugelman.john.kdoom.tools;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import javax.imageio.*;
+
+import name.kugelman.john.kdoom.file.*;
+import name.kugelman.john.kdoom.gui.*;
+import name.kugelman.john.kdoom.model.*;
+
+// Renders every level of a WAD set to <level>.png, scaled down to fit in a
+// square of the given size, one level per thread. Works without a display.
+public class LevelImageWriter {
+    public static final int DEFAULT_SIZE = 1024;
+
+    private int size;
+
+    public LevelImageWriter(int size) {
+        this.size = size;
+    }
+
+
+    public BufferedImage render(Level level) throws IOException {
+        LevelRenderer renderer = new LevelRenderer(level);
+
+        renderer.setScale(renderer.getScaleToFit(size, size));
+
+        return renderer.render();
+    }
+
+    public void write(Level level, File file) throws IOException {
+        ImageIO.write(render(level), "png", file);
+    }
+
+    // Writes the levels on the executor, returning once all are written.
+    public void writeAll(Collection<Level> levels, final File directory, ExecutorService executor)
+        throws IOException
+    {
+        List<Future<File>> writes = new ArrayList<Future<File>>();
+
+        for (final Level level: levels) {
+            writes.add(executor.submit(new Callable<File>() {
+                public File call() throws IOException {
+                    File file = new File(directory, level.getName() + ".png");
+
+                    write(level, file);
+                    return file;
+                }
+            }));
+        }
+
+        for (Future<File> write: writes) {
+            try {
+                write.get();
+            }
+            catch (InterruptedException exception) {
+                throw new InterruptedIOException();
+            }
+            catch (ExecutionException exception) {
+                if (exception.getCause() instanceof IOException) {
+                    throw (IOException) exception.getCause();
+                }
+
+                throw new RuntimeException(exception.getCause());
+            }
+        }
+    }
+
+
+    public static void main(String[] arguments) {
+        if (arguments.length < 2 || arguments.length > 3) {
+            System.err.println("Usage: kdoom <doom.wad> [patch.wad] <output directory>");
+            System.exit(1);
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        try {
+            WadFileSet wad = new WadFileSet(new WadFile(new File(arguments[0])));
+            File       directory;
+
+            if (arguments.length == 2) {
+                directory = new File(arguments[1]);
+            }
+            else {
+                wad.addPatch(new WadFile(new File(arguments[1])));
+                directory = new File(arguments[2]);
+            }
+
+            Resources.load(wad);
+
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory + ".");
+            }
+
+            new LevelImageWriter(DEFAULT_SIZE).writeAll(Resources.levels().values(), directory, executor);
+        }
+        catch (IllegalArgumentException exception) {
+            System.err.println(exception.getLocalizedMessage());
+            System.exit(1);
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+            System.exit(-1);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
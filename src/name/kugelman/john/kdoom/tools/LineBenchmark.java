@@ -0,0 +1,141 @@
+package name.kugelman.john.kdoom.tools;
+
+import java.io.*;
+import java.util.*;
+
+import name.kugelman.john.kdoom.file.*;
+import name.kugelman.john.kdoom.model.*;
+
+// Times measuring the distance from points to every line of every level in a
+// WAD set, the work behind finding the lines and sectors under the mouse:
+//
+//   per-object  Line.distanceTo for each line, one object at a time
+//   packed      LineGeometry.squaredDistancesTo over the packed arrays
+//
+// The points are scattered over each level's bounds from a fixed seed, so runs
+// are comparable. Each pass is run a number of times after warming up and the
+// fastest and median times are printed. For example, on test/BioTech2.wad:
+//
+//   kdoom doom.wad test/BioTech2.wad
+public class LineBenchmark {
+    public static final int WARM_UP_ROUNDS   = 10;
+    public static final int ROUNDS           = 30;
+    public static final int POINTS_PER_LEVEL = 200;
+
+    private interface Pass {
+        void run();
+    }
+
+
+    private Collection<Level>          levels;
+    private Map<Level, List<Location>> points;
+    private double                     sink;
+
+    public LineBenchmark(Collection<Level> levels) {
+        this.levels = levels;
+        this.points = new HashMap<Level, List<Location>>();
+
+        Random random = new Random(0);
+
+        for (Level level: levels) {
+            List<Location> levelPoints = new ArrayList<Location>();
+
+            for (int i = 0; i < POINTS_PER_LEVEL; ++i) {
+                int x = level.getMinX() + random.nextInt(level.getMaxX() - level.getMinX() + 1);
+                int y = level.getMinY() + random.nextInt(level.getMaxY() - level.getMinY() + 1);
+
+                levelPoints.add(new Location((short) x, (short) y));
+            }
+
+            points.put(level, levelPoints);
+        }
+    }
+
+
+    public void run(PrintStream output) {
+        int lineCount = 0;
+
+        for (Level level: levels) {
+            lineCount += level.lines().size();
+        }
+
+        output.println(levels.size() + " levels, " + lineCount + " lines, "
+                     + POINTS_PER_LEVEL + " points per level.");
+
+        time(output, "per-object", new Pass() {
+            public void run() {
+                for (Level level: levels) {
+                    for (Location point: points.get(level)) {
+                        for (Line line: level.lines()) {
+                            sink += line.distanceTo(point);
+                        }
+                    }
+                }
+            }
+        });
+
+        time(output, "packed", new Pass() {
+            public void run() {
+                for (Level level: levels) {
+                    LineGeometry geometry         = level.getLineGeometry();
+                    float[]      squaredDistances = new float[geometry.getLineCount()];
+
+                    for (Location point: points.get(level)) {
+                        geometry.squaredDistancesTo(point.getX(), point.getY(), squaredDistances);
+
+                        for (float squaredDistance: squaredDistances) {
+                            sink += squaredDistance;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void time(PrintStream output, String name, Pass pass) {
+        for (int round = 0; round < WARM_UP_ROUNDS; ++round) {
+            pass.run();
+        }
+
+        long[] times = new long[ROUNDS];
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+
+            pass.run();
+            times[round] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(times);
+
+        output.printf("%-10s best %7.2fms  median %7.2fms%n", name, times[0] / 1e6, times[ROUNDS / 2] / 1e6);
+    }
+
+
+    public static void main(String[] arguments) {
+        if (arguments.length < 1 || arguments.length > 2) {
+            System.err.println("Usage: kdoom <doom.wad> [patch.wad]");
+            System.exit(1);
+        }
+
+        try {
+            WadFileSet wad = new WadFileSet(new WadFile(new File(arguments[0])));
+
+            if (arguments.length == 2) {
+                wad.addPatch(new WadFile(new File(arguments[1])));
+            }
+
+            Resources.load(wad);
+
+            new LineBenchmark(Resources.levels().values()).run(System.out);
+        }
+        catch (IllegalArgumentException exception) {
+            System.err.println(exception.getLocalizedMessage());
+            System.exit(1);
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package name.kugelman.john.kdoom.tools;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+import static java.lang.Math.*;
+
+// Packs rectangles into a fixed-size bin with the skyline bottom-left
+// heuristic. The skyline is the top edge of everything placed so far, kept as
+// a list of horizontal segments from left to right; each rectangle goes where
+// its top edge would be lowest, leftmost on ties.
+class SkylinePacker {
+    private static class Segment {
+        int x, y, width;
+
+        Segment(int x, int y, int width) {
+            this.x     = x;
+            this.y     = y;
+            this.width = width;
+        }
+    }
+
+    private int           width, height;
+    private List<Segment> skyline;
+    private int           usedWidth, usedHeight;
+
+    SkylinePacker(int width, int height) {
+        this.width   = width;
+        this.height  = height;
+        this.skyline = new ArrayList<Segment>();
+
+        skyline.add(new Segment(0, 0, width));
+    }
+
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    // Right and bottom edges of the area actually used.
+    int getUsedWidth() {
+        return usedWidth;
+    }
+
+    int getUsedHeight() {
+        return usedHeight;
+    }
+
+
+    // The top left corner of the space reserved for the rectangle, or null if
+    // it does not fit.
+    Point add(int rectangleWidth, int rectangleHeight) {
+        int bestIndex = -1, bestX = 0, bestY = 0;
+
+        for (int i = 0; i < skyline.size(); ++i) {
+            int x = skyline.get(i).x;
+            int y = fitAt(i, rectangleWidth);
+
+            if (y < 0 || y + rectangleHeight > height) {
+                continue;
+            }
+
+            if (bestIndex < 0 || y < bestY) {
+                bestIndex = i;
+                bestX     = x;
+                bestY     = y;
+            }
+        }
+
+        if (bestIndex < 0) {
+            return null;
+        }
+
+        raise(bestIndex, bestX, bestY + rectangleHeight, rectangleWidth);
+
+        usedWidth  = max(usedWidth,  bestX + rectangleWidth);
+        usedHeight = max(usedHeight, bestY + rectangleHeight);
+
+        return new Point(bestX, bestY);
+    }
+
+    // The lowest y a rectangle starting at segment i can sit at: the highest
+    // segment it spans. -1 if it runs off the right edge.
+    private int fitAt(int i, int rectangleWidth) {
+        int x = skyline.get(i).x;
+        int y = 0;
+
+        if (x + rectangleWidth > width) {
+            return -1;
+        }
+
+        for (int widthLeft = rectangleWidth; widthLeft > 0; ++i) {
+            Segment segment = skyline.get(i);
+
+            y          = max(y, segment.y);
+            widthLeft -= segment.width;
+        }
+
+        return y;
+    }
+
+    // Inserts a segment for the new top edge at segment i, trimming or removing
+    // the segments it covers and merging neighbours of equal height.
+    private void raise(int i, int x, int y, int segmentWidth) {
+        skyline.add(i, new Segment(x, y, segmentWidth));
+
+        for (int j = i + 1; j < skyline.size(); ) {
+            Segment segment = skyline.get(j);
+            int     overlap = x + segmentWidth - segment.x;
+
+            if (overlap <= 0) {
+                break;
+            }
+
+            if (overlap < segment.width) {
+                segment.x     += overlap;
+                segment.width -= overlap;
+                break;
+            }
+
+            skyline.remove(j);
+        }
+
+        for (int j = 0; j < skyline.size() - 1; ) {
+            Segment segment = skyline.get(j);
+            Segment next    = skyline.get(j + 1);
+
+            if (segment.y == next.y) {
+                segment.width += next.width;
+                skyline.remove(j + 1);
+            }
+            else {
+                ++j;
+            }
+        }
+    }
+}
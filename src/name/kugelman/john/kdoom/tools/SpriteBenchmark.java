@@ -0,0 +1,213 @@
+package name.kugelman.john.kdoom.tools;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.List;
+
+import name.kugelman.john.kdoom.file.*;
+import name.kugelman.john.kdoom.model.*;
+
+// Times decoding and converting every sprite frame in a WAD set, the work
+// behind sprite browsing and atlas building:
+//
+//   decode      column posts to palette indices and transparency, from lump
+//               data read beforehand
+//   per-pixel   indices to an ARGB image one setRGB at a time, as patches
+//               were once decoded, for comparison
+//   bulk        indices to an ARGB image with IndexedImage.toImage
+//   copy        every frame through an ARGB image, clearing it with setRGB,
+//               drawing with drawImage and reading back with getRGB, plain and
+//               mirrored, as sprite animation once did, for comparison
+//   draw        every frame onto a pixel array with IndexedImage.drawOnto,
+//               plain and mirrored, as sprite animation does
+//
+// Each pass is run a number of times after warming up and the fastest and
+// median times are printed. For example, on test/BioTech2.wad:
+//
+//   kdoom doom.wad test/BioTech2.wad
+public class SpriteBenchmark {
+    public static final int WARM_UP_ROUNDS = 10;
+    public static final int ROUNDS         = 30;
+
+    private interface Pass {
+        void run() throws IOException;
+    }
+
+
+    private Collection<Patch> patches;
+    private int[]             colors;
+    private int               sink;
+
+    public SpriteBenchmark(Collection<Patch> patches, int[] colors) {
+        this.patches = patches;
+        this.colors  = colors;
+    }
+
+
+    public void run(PrintStream output) throws IOException {
+        output.println(patches.size() + " sprite frames.");
+
+        // Read, decode and convert everything up front, so that passes time
+        // only their own work. Each frame gets its own buffers to draw into.
+        final List<ByteBuffer>    lumpData = new ArrayList<ByteBuffer>();
+        final List<IndexedImage>  images   = new ArrayList<IndexedImage>();
+        final List<BufferedImage> sources  = new ArrayList<BufferedImage>();
+        final List<BufferedImage> buffers  = new ArrayList<BufferedImage>();
+        final List<int[]>         pixels   = new ArrayList<int[]>();
+
+        for (Patch patch: patches) {
+            IndexedImage image = patch.getIndexedImage();
+
+            lumpData.add(patch.getLump().getData());
+            images  .add(image);
+            sources .add(image.toImage(colors));
+            buffers .add(new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB));
+            pixels  .add(new int[image.getWidth() * image.getHeight()]);
+        }
+
+        time(output, "decode", new Pass() {
+            public void run() {
+                for (ByteBuffer data: lumpData) {
+                    data.rewind();
+                    sink += Patch.decode(data).getWidth();
+                }
+            }
+        });
+
+        time(output, "per-pixel", new Pass() {
+            public void run() {
+                for (IndexedImage image: images) {
+                    sink += toImagePerPixel(image).getWidth();
+                }
+            }
+        });
+
+        time(output, "bulk", new Pass() {
+            public void run() {
+                for (IndexedImage image: images) {
+                    sink += image.toImage(colors).getWidth();
+                }
+            }
+        });
+
+        time(output, "copy", new Pass() {
+            public void run() {
+                for (int i = 0; i < images.size(); ++i) {
+                    copyFrame(sources.get(i), buffers.get(i), pixels.get(i), false);
+                    copyFrame(sources.get(i), buffers.get(i), pixels.get(i), true);
+
+                    sink += pixels.get(i)[pixels.get(i).length / 2];
+                }
+            }
+        });
+
+        time(output, "draw", new Pass() {
+            public void run() {
+                for (int i = 0; i < images.size(); ++i) {
+                    IndexedImage image       = images.get(i);
+                    int[]        imagePixels = pixels.get(i);
+
+                    Arrays.fill(imagePixels, 0);
+                    image.drawOnto(imagePixels, image.getWidth(), 0, 0, false, colors);
+                    Arrays.fill(imagePixels, 0);
+                    image.drawOnto(imagePixels, image.getWidth(), 0, 0, true,  colors);
+
+                    sink += imagePixels[imagePixels.length / 2];
+                }
+            }
+        });
+    }
+
+    private void time(PrintStream output, String name, Pass pass) throws IOException {
+        for (int round = 0; round < WARM_UP_ROUNDS; ++round) {
+            pass.run();
+        }
+
+        long[] times = new long[ROUNDS];
+
+        for (int round = 0; round < ROUNDS; ++round) {
+            long start = System.nanoTime();
+
+            pass.run();
+            times[round] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(times);
+
+        output.printf("%-10s best %7.2fms  median %7.2fms%n", name, times[0] / 1e6, times[ROUNDS / 2] / 1e6);
+    }
+
+    private BufferedImage toImagePerPixel(IndexedImage indexedImage) {
+        BufferedImage image = new BufferedImage(indexedImage.getWidth(), indexedImage.getHeight(),
+                                                BufferedImage.TYPE_INT_ARGB);
+
+        for (int y = 0; y < indexedImage.getHeight(); ++y) {
+            for (int x = 0; x < indexedImage.getWidth(); ++x) {
+                if (indexedImage.isOpaque(x, y)) {
+                    image.setRGB(x, y, colors[indexedImage.getIndex(x, y)]);
+                }
+            }
+        }
+
+        return image;
+    }
+
+    // Sprite animation's frame copy before IndexedImage.drawOnto.
+    private static void copyFrame(BufferedImage source, BufferedImage buffer, int[] pixels, boolean isMirrored) {
+        int width  = buffer.getWidth();
+        int height = buffer.getHeight();
+
+        // Reset buffer to all transparent.
+        Arrays.fill(pixels, 0);
+        buffer.setRGB(0, 0, width, height, pixels, 0, width);
+
+        // Draw frame onto buffer.
+        AffineTransform transform = new AffineTransform();
+
+        if (isMirrored) {
+            transform.translate(width, 0);
+            transform.scale    (-1, 1);
+        }
+
+        Graphics2D graphics = buffer.createGraphics();
+        graphics.drawImage(source, transform, null);
+        graphics.dispose();
+
+        // Get pixels from buffer.
+        buffer.getRGB(0, 0, width, height, pixels, 0, width);
+    }
+
+
+    public static void main(String[] arguments) {
+        if (arguments.length < 1 || arguments.length > 2) {
+            System.err.println("Usage: kdoom <doom.wad> [patch.wad]");
+            System.exit(1);
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            WadFileSet wad = new WadFileSet(new WadFile(new File(arguments[0])));
+
+            if (arguments.length == 2) {
+                wad.addPatch(new WadFile(new File(arguments[1])));
+            }
+
+            Resources.load(wad);
+
+            new SpriteBenchmark(Sprite.patches().values(), Resources.getPalette().getColors()).run(System.out);
+        }
+        catch (IllegalArgumentException exception) {
+            System.err.println(exception.getLocalizedMessage());
+            System.exit(1);
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
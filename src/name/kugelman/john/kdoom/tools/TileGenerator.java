@@ -0,0 +1,225 @@
+package name.kugelman.john.kdoom.tools;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import javax.imageio.*;
+
+import name.kugelman.john.kdoom.file.*;
+import name.kugelman.john.kdoom.gui.*;
+import name.kugelman.john.kdoom.model.*;
+
+// Renders levels into slippy-map tile pyramids: <level>/<zoom>/<x>/<y>.png,
+// 256 pixels square. Zoom 0 fits the whole level in one tile and each zoom
+// after doubles the resolution, down to a minimum number of map units per
+// pixel. Tiles are counted from the level's top left corner. Tiles with no
+// sectors or things on them are not written.
+//
+// Each row of tiles is a task of its own, with its own renderer, so rows
+// render in parallel and each only builds the flat paints it touches.
+public class TileGenerator {
+    public static final int TILE_SIZE         = 256;
+    public static final int DEFAULT_MIN_SCALE = 1;
+
+    private int minScale;
+
+    public TileGenerator(int minScale) {
+        if (minScale < 1) {
+            throw new IllegalArgumentException("Minimum scale " + minScale + " is less than 1.");
+        }
+
+        this.minScale = minScale;
+    }
+
+
+    // Map units per pixel at zoom 0: the smallest power of two at which the
+    // level fits in a tile, so every later zoom halves it exactly. Rounding to
+    // whole pixels can make the level's bounds a pixel wider than the scale to
+    // fit allows for, so they are checked.
+    public int getBaseScale(Level level) {
+        LevelRenderer renderer = new LevelRenderer(level);
+        int           scale    = Integer.highestOneBit(renderer.getScaleToFit(TILE_SIZE, TILE_SIZE));
+
+        for (;; scale *= 2) {
+            renderer.setScale(scale);
+
+            Rectangle bounds = renderer.getBounds();
+
+            if (bounds.width <= TILE_SIZE && bounds.height <= TILE_SIZE) {
+                return scale;
+            }
+        }
+    }
+
+    public int getZoomCount(Level level) {
+        int zoomCount = 1;
+
+        for (int scale = getBaseScale(level); scale / 2 >= minScale; scale /= 2) {
+            ++zoomCount;
+        }
+
+        return zoomCount;
+    }
+
+    public int getScale(Level level, int zoom) {
+        return getBaseScale(level) >> zoom;
+    }
+
+
+    // Writes the pyramids of all the levels on the executor. Returns the number
+    // of tiles written once they all are.
+    public int writeAll(Collection<Level> levels, File directory, ExecutorService executor) throws IOException {
+        List<Future<Integer>> rows = new ArrayList<Future<Integer>>();
+
+        for (Level level: levels) {
+            for (int zoom = 0; zoom < getZoomCount(level); ++zoom) {
+                for (int row = 0; row < getRowCount(level, zoom); ++row) {
+                    rows.add(executor.submit(rowWriter(level, zoom, row, directory)));
+                }
+            }
+        }
+
+        int tileCount = 0;
+
+        for (Future<Integer> row: rows) {
+            try {
+                tileCount += row.get();
+            }
+            catch (InterruptedException exception) {
+                throw new InterruptedIOException();
+            }
+            catch (ExecutionException exception) {
+                if (exception.getCause() instanceof IOException) {
+                    throw (IOException) exception.getCause();
+                }
+
+                throw new RuntimeException(exception.getCause());
+            }
+        }
+
+        return tileCount;
+    }
+
+    private Callable<Integer> rowWriter(final Level level, final int zoom, final int row, final File directory) {
+        return new Callable<Integer>() {
+            public Integer call() throws IOException {
+                LevelRenderer renderer    = new LevelRenderer(level);
+                int           columnCount = getColumnCount(level, zoom);
+                int           tileCount   = 0;
+
+                renderer.setScale(getScale(level, zoom));
+
+                for (int column = 0; column < columnCount; ++column) {
+                    BufferedImage tile = renderTile(renderer, column, row);
+
+                    if (tile == null) {
+                        continue;
+                    }
+
+                    File columnDirectory = new File(directory, level.getName() + File.separator
+                                                             + zoom            + File.separator + column);
+
+                    // Rows share column directories, so another may create it first.
+                    if (!columnDirectory.mkdirs() && !columnDirectory.isDirectory()) {
+                        throw new IOException("Could not create " + columnDirectory + ".");
+                    }
+
+                    ImageIO.write(tile, "png", new File(columnDirectory, row + ".png"));
+                    ++tileCount;
+                }
+
+                return tileCount;
+            }
+        };
+    }
+
+    // One tile, or null if it is empty or outside the pyramid.
+    public BufferedImage renderTile(Level level, int zoom, int column, int row) throws IOException {
+        if (zoom < 0 || zoom >= getZoomCount(level)) {
+            return null;
+        }
+
+        LevelRenderer renderer = new LevelRenderer(level);
+
+        renderer.setScale(getScale(level, zoom));
+
+        return renderTile(renderer, column, row);
+    }
+
+    // With a renderer already at the zoom's scale.
+    private BufferedImage renderTile(LevelRenderer renderer, int column, int row) throws IOException {
+        Rectangle bounds = renderer.getBounds();
+
+        if (column < 0 || row < 0 || column * TILE_SIZE >= bounds.width || row * TILE_SIZE >= bounds.height) {
+            return null;
+        }
+
+        Rectangle tile = new Rectangle(bounds.x + column * TILE_SIZE, bounds.y + row * TILE_SIZE,
+                                       TILE_SIZE, TILE_SIZE);
+
+        return renderer.isEmpty(tile) ? null : renderer.render(tile);
+    }
+
+    private int getColumnCount(Level level, int zoom) {
+        return (bounds(level, zoom).width + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private int getRowCount(Level level, int zoom) {
+        return (bounds(level, zoom).height + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    // The level's extent in screen coordinates at a zoom.
+    private Rectangle bounds(Level level, int zoom) {
+        LevelRenderer renderer = new LevelRenderer(level);
+
+        renderer.setScale(getScale(level, zoom));
+
+        return renderer.getBounds();
+    }
+
+
+    public static void main(String[] arguments) {
+        if (arguments.length < 2 || arguments.length > 3) {
+            System.err.println("Usage: kdoom <doom.wad> [patch.wad] <output directory>");
+            System.exit(1);
+        }
+
+        System.setProperty("java.awt.headless", "true");
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        try {
+            WadFileSet wad = new WadFileSet(new WadFile(new File(arguments[0])));
+            File       directory;
+
+            if (arguments.length == 2) {
+                directory = new File(arguments[1]);
+            }
+            else {
+                wad.addPatch(new WadFile(new File(arguments[1])));
+                directory = new File(arguments[2]);
+            }
+
+            Resources.load(wad);
+
+            int tileCount = new TileGenerator(DEFAULT_MIN_SCALE).writeAll(Resources.levels().values(), directory,
+                                                                          executor);
+
+            System.out.println(tileCount + " tiles written.");
+        }
+        catch (IllegalArgumentException exception) {
+            System.err.println(exception.getLocalizedMessage());
+            System.exit(1);
+        }
+        catch (IOException exception) {
+            exception.printStackTrace();
+            System.exit(-1);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}